@@ -24,6 +24,7 @@ import com.github.intelliguard.inspection.GuardInspection;
 import com.github.intelliguard.inspection.SerializationProblemsInspection;
 import com.github.intelliguard.inspection.PluginProblemsInspection;
 import com.github.intelliguard.inspection.ReflectionProblemsInspection;
+import com.github.intelliguard.runner.worker.ObfuscationWorkerClient;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -45,7 +46,7 @@ public class GuardComponent implements ApplicationComponent, InspectionToolProvi
 
     public void disposeComponent()
     {
-        // TODO: insert component disposal logic here
+        ObfuscationWorkerClient.getInstance().shutdown();
     }
 
     @NotNull
@@ -17,11 +17,17 @@
 package com.github.intelliguard;
 
 import com.github.intelliguard.refactor.RenameListenerProvider;
+import com.github.intelliguard.ui.CoveragePanel;
 import com.github.intelliguard.ui.Icons;
+import com.github.intelliguard.ui.MetricsPanel;
 import com.github.intelliguard.ui.ToolWindowPanel;
 import com.github.intelliguard.gutter.GuardMarkerEditorListener;
+import com.github.intelliguard.runner.CoverageReport;
 import com.github.intelliguard.runner.ProgressInfoReceiver;
+import com.github.intelliguard.runner.RunMetrics;
+import com.github.intelliguard.runner.RunMetricsHistory;
 import com.intellij.openapi.components.ProjectComponent;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
@@ -31,8 +37,14 @@ import com.intellij.refactoring.listeners.RefactoringListenerManager;
 import com.intellij.util.messages.MessageBusConnection;
 import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.content.ContentManager;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
@@ -46,6 +58,11 @@ public class GuardProjectComponent implements ProjectComponent
     private Project project;
     private ToolWindow toolWindow;
     private ToolWindowPanel toolWindowPanel;
+    private final Map<String, ToolWindowPanel> namedPanels = new HashMap<String, ToolWindowPanel>();
+    private final RunMetricsHistory runMetricsHistory = new RunMetricsHistory();
+    private MetricsPanel metricsPanel;
+    private final Map<String, CoveragePanel> coveragePanels = new HashMap<String, CoveragePanel>();
+    private final Set<Module> runningModules = new HashSet<Module>();
     private RenameListenerProvider renameListenerProvider;
     private MessageBusConnection messageBusConnection;
 
@@ -77,6 +94,88 @@ public class GuardProjectComponent implements ProjectComponent
         return toolWindowPanel;
     }
 
+    /**
+     * Creates a receiver in a tool window tab of its own, or clears the tab if it already exists.
+     * Used when several modules are obfuscated at once.
+     * @param title the tab title
+     * @return the receiver
+     */
+    public ProgressInfoReceiver createProgressInfoReceiver(@NotNull String title)
+    {
+        toolWindow.setAvailable(true, null);
+        ToolWindowPanel panel = namedPanels.get(title);
+        final ContentManager contentManager = toolWindow.getContentManager();
+        if (panel == null || contentManager.findContent(title) == null)
+        {
+            panel = new ToolWindowPanel();
+            final Content content = contentManager.getFactory().createContent(panel.getPanel(), title, false);
+            contentManager.addContent(content);
+            namedPanels.put(title, panel);
+        }
+        panel.clear();
+        return panel;
+    }
+
+    /**
+     * Adds the metrics of a finished run to the history shown in the metrics tab.
+     * @param moduleName the obfuscated module
+     * @param metrics the metrics, copied so that later changes are not recorded
+     */
+    public void addRunMetrics(@NotNull String moduleName, @NotNull RunMetrics metrics)
+    {
+        runMetricsHistory.add(moduleName, metrics.copy());
+        metricsPanel.refresh();
+    }
+
+    /**
+     * Marks an obfuscation run of a module as started. Runs of the same module write the same jars,
+     * so they must not overlap.
+     * @param module the module
+     * @return <tt>false</tt> if a run of the module is already in progress
+     */
+    public synchronized boolean startRun(@NotNull Module module)
+    {
+        return runningModules.add(module);
+    }
+
+    /**
+     * Marks an obfuscation run started with {@link #startRun(Module)} as done.
+     * @param module the module
+     */
+    public synchronized void finishRun(@NotNull Module module)
+    {
+        runningModules.remove(module);
+    }
+
+    public synchronized boolean isRunning(@NotNull Module module)
+    {
+        return runningModules.contains(module);
+    }
+
+    /**
+     * Shows a coverage report in a tool window tab of its own, one tab per module.
+     * @param report the report
+     * @param status text describing the last update
+     */
+    public void showCoverageReport(@NotNull CoverageReport report, @NotNull String status)
+    {
+        toolWindow.setAvailable(true, null);
+        final String title = "Coverage: " + report.getModule().getName();
+        final ContentManager contentManager = toolWindow.getContentManager();
+        CoveragePanel panel = coveragePanels.get(title);
+        Content content = contentManager.findContent(title);
+        if (panel == null || content == null)
+        {
+            panel = new CoveragePanel(report);
+            content = contentManager.getFactory().createContent(panel.getPanel(), title, false);
+            contentManager.addContent(content);
+            coveragePanels.put(title, panel);
+        }
+        panel.refresh(status);
+        contentManager.setSelectedContent(content);
+        toolWindow.activate(null);
+    }
+
     public void projectOpened()
     {
         final ToolWindowManager toolWindowManager = ToolWindowManager.getInstance(project);
@@ -87,6 +186,9 @@ public class GuardProjectComponent implements ProjectComponent
         final Content content = contentFactory.createContent(toolWindowPanel.getPanel(), "", true);
 
         toolWindow.getContentManager().addContent(content);
+
+        metricsPanel = new MetricsPanel(project, runMetricsHistory);
+        toolWindow.getContentManager().addContent(contentFactory.createContent(metricsPanel.getPanel(), "Metrics", false));
         toolWindow.setIcon(Icons.OBFUSCATION_NODE_ICON);
         toolWindow.setAutoHide(false);
         toolWindow.setAvailable(false, null);
@@ -101,6 +203,14 @@ public class GuardProjectComponent implements ProjectComponent
 
     public void projectClosed()
     {
+        toolWindowPanel.dispose();
+        for (ToolWindowPanel panel : namedPanels.values())
+        {
+            panel.dispose();
+        }
+        namedPanels.clear();
+        coveragePanels.clear();
+
         ToolWindowManager.getInstance(project).unregisterToolWindow(TOOLWINDOW_ID);
 
         final RefactoringListenerManager manager = RefactoringListenerManager.getInstance(project);
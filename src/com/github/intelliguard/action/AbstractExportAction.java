@@ -20,6 +20,7 @@ import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.actionSystem.DataKeys;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.ui.Messages;
+import com.github.intelliguard.facet.AnnotationKeepers;
 import com.github.intelliguard.facet.GuardFacet;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.GuardProjectComponent;
@@ -67,7 +68,7 @@ public abstract class AbstractExportAction extends AbstractGuardAction
         }
 
         GuardFacetConfiguration configuration = guardFacet.getConfiguration();
-        configuration.mainclass = exportOptionsForm.getMainClass();
+        configuration.setMainClass(exportOptionsForm.getMainClass());
         configuration.inFile = exportOptionsForm.getJarPath();
         configuration.outFile = exportOptionsForm.getObfuscatedJarPath();
 
@@ -90,6 +91,12 @@ public abstract class AbstractExportAction extends AbstractGuardAction
             return;
         }
 
+        if (!AnnotationKeepers.isAvailable(guardFacet))
+        {
+            Messages.showErrorDialog(module.getProject(), "Keep annotations can not be searched while indexing. Please export again when indexing has finished.", "Export error");
+            return;
+        }
+
         // output configuration to toolwindow
         final String config = generateConfiguration(guardFacet);
         final ProgressInfoReceiver receiver = module.getProject().getComponent(GuardProjectComponent.class).createProgressInfoReceiver();
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.action;
+
+import com.github.intelliguard.facet.GuardFacet;
+import com.github.intelliguard.runner.CoverageReport;
+import com.github.intelliguard.runner.CoverageTask;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+
+/**
+ * Reports which classes, methods and fields of the selected module keep their names when obfuscated.
+ * The first run analyzes all source files, later runs only the files which changed.
+ */
+public class CoverageReportAction extends AbstractGuardAction
+{
+    @Override
+    public void update(AnActionEvent e)
+    {
+        e.getPresentation().setEnabled(getGuardFacet(e) != null);
+    }
+
+    public void actionPerformed(AnActionEvent e)
+    {
+        final GuardFacet guardFacet = getGuardFacet(e);
+        if (guardFacet == null)
+        {
+            return;
+        }
+        new CoverageTask(CoverageReport.getInstance(guardFacet.getModule()), false).queue();
+    }
+}
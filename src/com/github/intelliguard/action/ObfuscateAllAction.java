@@ -0,0 +1,178 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.action;
+
+import com.github.intelliguard.GuardProjectComponent;
+import com.github.intelliguard.facet.GuardFacet;
+import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.runner.JarTask;
+import com.github.intelliguard.runner.ObfuscateTask;
+import com.github.intelliguard.runner.ObfuscationBatch;
+import com.github.intelliguard.runner.RunProgress;
+import com.github.intelliguard.util.ModuleUtils;
+import com.github.intelliguard.util.ObfuscatorUtils;
+import com.intellij.facet.ui.ValidationResult;
+import com.intellij.ide.util.PropertiesComponent;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.InputValidator;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Obfuscates every module with an obfuscation facet, using the jar settings of each facet's last run.
+ */
+public class ObfuscateAllAction extends AbstractGuardAction
+{
+    private static final String PARALLELISM_KEY = "IntelliGuard.batchParallelism";
+
+    @Override
+    public void update(AnActionEvent e)
+    {
+        final Project project = getProject(e);
+        e.getPresentation().setEnabled(project != null && !getFacetModules(project).isEmpty());
+    }
+
+    public void actionPerformed(AnActionEvent e)
+    {
+        final Project project = getProject(e);
+        if (project == null)
+        {
+            return;
+        }
+        final List<Module> modules = getFacetModules(project);
+        if (modules.isEmpty())
+        {
+            return;
+        }
+
+        final PropertiesComponent properties = PropertiesComponent.getInstance(project);
+        final String defaultParallelism = properties.getValue(PARALLELISM_KEY, String.valueOf(Runtime.getRuntime().availableProcessors()));
+        final String parallelism = Messages.showInputDialog(project, "Number of modules to obfuscate in parallel:", "Obfuscate All Modules",
+                Messages.getQuestionIcon(), defaultParallelism, new InputValidator()
+        {
+            public boolean checkInput(String inputString)
+            {
+                return parsePositive(inputString) > 0;
+            }
+
+            public boolean canClose(String inputString)
+            {
+                return checkInput(inputString);
+            }
+        });
+        if (parallelism == null)
+        {
+            return;
+        }
+        properties.setValue(PARALLELISM_KEY, parallelism.trim());
+
+        final GuardProjectComponent projectComponent = project.getComponent(GuardProjectComponent.class);
+        final ObfuscationBatch batch = new ObfuscationBatch(project, parsePositive(parallelism), projectComponent.createProgressInfoReceiver());
+        for (Module module : modules)
+        {
+            final GuardFacet guardFacet = GuardFacet.getInstance(module);
+            final GuardFacetConfiguration configuration = guardFacet.getConfiguration();
+            final String errorMessage = validate(configuration);
+            if (errorMessage != null)
+            {
+                batch.skip(module, errorMessage);
+                continue;
+            }
+
+            final File outputDir = ModuleUtils.getModuleOutputDir(module);
+            if (outputDir != null)
+            {
+                configuration.jarConfig.addEntry(outputDir.getAbsolutePath());
+            }
+
+            final boolean scratch = configuration.inFile == null || configuration.inFile.length() == 0;
+            final File inJar;
+            try
+            {
+                inJar = scratch ? ObfuscatorUtils.createScratchJar(module.getName()) : new File(configuration.inFile);
+            }
+            catch (IOException ex)
+            {
+                batch.skip(module, "Could not create intermediate jar: " + ex.getMessage());
+                continue;
+            }
+
+            final RunProgress runProgress = new RunProgress(projectComponent.createProgressInfoReceiver(module.getName()));
+            batch.add(module, runProgress, new JarTask(runProgress, module, configuration.jarConfig, configuration.mainclass, inJar),
+                    new ObfuscateTask(runProgress, guardFacet, inJar), inJar, scratch);
+        }
+        batch.start(true);
+    }
+
+    @Nullable
+    private static String validate(@NotNull GuardFacetConfiguration configuration)
+    {
+        if (configuration.yGuardJar == null)
+        {
+            return "Missing yGuard archive";
+        }
+        final ValidationResult yGuardValidationResult = ObfuscatorUtils.checkYGuard(configuration.yGuardJar);
+        if (yGuardValidationResult != ValidationResult.OK)
+        {
+            return "Invalid yGuard archive: " + yGuardValidationResult.getErrorMessage();
+        }
+        if (configuration.outFile == null || configuration.outFile.length() == 0)
+        {
+            return "Obfuscation jar path not specified";
+        }
+        if (configuration.outFile.equals(configuration.inFile))
+        {
+            return "Output jar path and obfuscated jar path can not be the same";
+        }
+        return null;
+    }
+
+    @NotNull
+    private static List<Module> getFacetModules(@NotNull Project project)
+    {
+        final List<Module> modules = new ArrayList<Module>();
+        for (Module module : ModuleManager.getInstance(project).getModules())
+        {
+            if (GuardFacet.getInstance(module) != null)
+            {
+                modules.add(module);
+            }
+        }
+        return modules;
+    }
+
+    private static int parsePositive(@Nullable String text)
+    {
+        try
+        {
+            return text == null ? -1 : Integer.parseInt(text.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+}
@@ -21,16 +21,14 @@ import com.intellij.openapi.actionSystem.DataKeys;
 import com.intellij.openapi.actionSystem.Presentation;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.compiler.*;
-import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.facet.ui.ValidationResult;
 import com.github.intelliguard.facet.GuardFacet;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.ui.FormDialogWrapper;
 import com.github.intelliguard.ui.JarOptionsForm;
-import com.github.intelliguard.util.UiUtils;
 import com.github.intelliguard.runner.JarTask;
+import com.github.intelliguard.runner.ObfuscationPipeline;
 import com.github.intelliguard.runner.ObfuscateTask;
 import com.github.intelliguard.runner.RunProgress;
 import com.github.intelliguard.util.ModuleUtils;
@@ -62,7 +60,8 @@ public class RunObfuscationAction extends AbstractGuardAction
         presentation.setText("Obfuscate module '" + module.getName() + "'");
 
         final GuardFacet guardFacet = GuardFacet.getInstance(module);
-        presentation.setEnabled(guardFacet != null);
+        // runs of the same module write the same jars
+        presentation.setEnabled(guardFacet != null && !module.getProject().getComponent(GuardProjectComponent.class).isRunning(module));
     }
 
     public void actionPerformed(AnActionEvent e)
@@ -111,16 +110,16 @@ public class RunObfuscationAction extends AbstractGuardAction
         {
             GuardFacetConfiguration configuration = guardFacet.getConfiguration();
             configuration.jarConfig.setLinkLibraries(jarOptionsForm.getLibrariesManifestPath());
-            configuration.mainclass = jarOptionsForm.getMainClass();
+            configuration.jarConfig.setIncremental(jarOptionsForm.getIncremental());
+            configuration.jarConfig.setStoreUncompressed(jarOptionsForm.getStoreUncompressed());
+            configuration.jarConfig.setReproducible(jarOptionsForm.getReproducible());
+            configuration.jarConfig.setMergeArchives(jarOptionsForm.getMergeArchives());
+            configuration.setMainClass(jarOptionsForm.getMainClass());
             configuration.inFile = jarOptionsForm.getJarPath();
             configuration.outFile = jarOptionsForm.getObfuscatedJarPath();
 
             String errorMessage = null;
-            if (configuration.inFile.length() == 0)
-            {
-                errorMessage = "Output jar path not specified";
-            }
-            else if (configuration.outFile.length() == 0)
+            if (configuration.outFile.length() == 0)
             {
                 errorMessage = "Obfuscation jar path not specified";
             }
@@ -134,70 +133,25 @@ public class RunObfuscationAction extends AbstractGuardAction
                 return;
             }
 
-            final File inJar = new File(configuration.inFile);
+            // without an output jar path the intermediate jar only lives in a scratch location
+            final boolean scratch = configuration.inFile.length() == 0;
+            final File inJar;
+            try
+            {
+                inJar = scratch ? ObfuscatorUtils.createScratchJar(module.getName()) : new File(configuration.inFile);
+            }
+            catch (IOException ex)
+            {
+                Messages.showErrorDialog(module.getProject(), "Could not create intermediate jar: " + ex.getMessage(), "Obfuscation error");
+                return;
+            }
             final File outJar = new File(configuration.outFile);
 
             final RunProgress runProgress = new RunProgress(module.getProject().getComponent(GuardProjectComponent.class).createProgressInfoReceiver());
             final Runnable jarTask = new JarTask(runProgress, module, configuration.jarConfig, configuration.mainclass, inJar);
-            final Runnable obfuscateTask = new ObfuscateTask(runProgress, guardFacet);
+            final Runnable obfuscateTask = new ObfuscateTask(runProgress, guardFacet, inJar);
 
-            if (jarOptionsForm.getExecuteMake())
-            {
-                CompilerManager compilerManager = CompilerManager.getInstance(module.getProject());
-                compilerManager.make(module.getProject(), new Module[] { module }, new CompileStatusNotification()
-                {
-                    public void finished(boolean aborted, int errors, int warnings, CompileContext compileContext)
-                    {
-                        if (errors == 0 && !aborted)
-                        {
-                            ProgressManager.getInstance().runProcessWithProgressSynchronously(jarTask, "Building jar " + inJar.getName(), true, module.getProject());
-                            if (runProgress.lookingGood())
-                            {
-                                ProgressManager.getInstance().runProcessWithProgressSynchronously(obfuscateTask, "Obfuscating jar " + inJar.getName(), true, module.getProject());
-
-                                if (runProgress.lookingGood())
-                                {
-                                    UiUtils.showInfoBallon(module.getProject(), "Obfuscated jar: " + outJar.getAbsolutePath());
-                                }
-                                else
-                                {
-                                    UiUtils.showErrorBallon(module.getProject(), "Error obfuscating jar " + outJar.getAbsolutePath());
-                                }
-                            }
-                            else
-                            {
-                                UiUtils.showErrorBallon(module.getProject(), "Error building jar " + inJar.getAbsolutePath());
-                            }
-                        }
-                        else
-                        {
-                            runProgress.markError("Obfuscation aborted. Compilation errors: " + errors);
-                            UiUtils.showErrorBallon(module.getProject(), "Obfuscation aborted. Compilation errors: " + errors);
-                        }
-                    }
-                });
-            }
-            else
-            {
-                ProgressManager.getInstance().runProcessWithProgressSynchronously(jarTask, "Building jar " + inJar.getName(), true, module.getProject());
-                if (runProgress.lookingGood())
-                {
-                    ProgressManager.getInstance().runProcessWithProgressSynchronously(obfuscateTask, "Obfuscating jar " + inJar.getName(), true, module.getProject());
-
-                    if (runProgress.lookingGood())
-                    {
-                        UiUtils.showInfoBallon(module.getProject(), "Obfuscated jar: " + outJar.getAbsolutePath());
-                    }
-                    else
-                    {
-                        UiUtils.showErrorBallon(module.getProject(), "Error obfuscating jar " + outJar.getAbsolutePath());
-                    }
-                }
-                else
-                {
-                    UiUtils.showErrorBallon(module.getProject(), "Error building jar " + inJar.getAbsolutePath());
-                }
-            }
+            new ObfuscationPipeline(module, runProgress, jarTask, obfuscateTask, inJar, outJar, scratch).start(jarOptionsForm.getExecuteMake());
         }
     }
 }
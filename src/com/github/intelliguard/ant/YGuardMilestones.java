@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.ant;
+
+import com.github.intelliguard.runner.RunProgress;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maps the progress of a yGuard run, as far as it can be told from its log, to a progress fraction.
+ * yGuard has no progress API, so the mapping is based on log messages that start a phase.
+ */
+public class YGuardMilestones
+{
+    // matched case insensitively, with the progress reached by then
+    private static final String[] KEYWORDS = { "parsing", "obfuscating", "renaming", "writing" };
+    private static final double[] FRACTIONS = { 0.1, 0.4, 0.5, 0.8 };
+
+    private final RunProgress runProgress;
+    private double fraction;
+
+    public YGuardMilestones(@NotNull RunProgress runProgress)
+    {
+        this.runProgress = runProgress;
+    }
+
+    public void taskStarted()
+    {
+        advance(0.05);
+    }
+
+    public void taskFinished()
+    {
+        advance(1);
+    }
+
+    public void messageLogged(@NotNull String message)
+    {
+        final String lowerCase = message.toLowerCase();
+        for (int i = 0; i < KEYWORDS.length; i++)
+        {
+            if (lowerCase.contains(KEYWORDS[i]))
+            {
+                advance(FRACTIONS[i]);
+            }
+        }
+    }
+
+    private void advance(double milestone)
+    {
+        if (milestone > fraction)
+        {
+            fraction = milestone;
+            runProgress.setFraction(fraction);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.ant;
+
+import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.generator.YGuardGenerator;
+import com.github.intelliguard.model.Keeper;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.RuntimeConfigurable;
+import org.apache.tools.ant.Target;
+import org.apache.tools.ant.UnknownElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Builds the yGuard task directly through the Ant object model. The result is equivalent to the
+ * build file written by {@link YGuardGenerator}, without rendering it to XML and parsing it back.
+ */
+public class YGuardTaskBuilder
+{
+    private final Project project;
+
+    public YGuardTaskBuilder(@NotNull Project project)
+    {
+        this.project = project;
+    }
+
+    /**
+     * Adds a target named {@link YGuardGenerator#YGUARD_TARGET_NAME} with a configured yGuard task
+     * to the project. The yGuard task must be defined in the project before the target is executed.
+     * @param configuration the facet configuration
+     * @param inFile the jar to obfuscate
+     * @param outFile the obfuscated jar
+     * @param logFile the yGuard log file
+     * @param externalClasses libraries and JDK classes referenced by the jar
+     * @param keepers the configured and annotation keepers
+     * @return the target
+     */
+    @NotNull
+    public Target build(@NotNull GuardFacetConfiguration configuration, @NotNull File inFile, @NotNull File outFile, @NotNull File logFile,
+                        @NotNull List<File> externalClasses, @NotNull Collection<Keeper> keepers)
+    {
+        final Target target = new Target();
+        target.setName(YGuardGenerator.YGUARD_TARGET_NAME);
+        target.setProject(project);
+        project.addTarget(target);
+
+        final UnknownElement yguard = createElement(null, YGuardTaskCache.YGUARD_TASK_NAME);
+        yguard.setOwningTarget(target);
+        target.addTask(yguard);
+
+        createElement(yguard, "inoutpair",
+                "in", inFile.getAbsolutePath(),
+                "out", outFile.getAbsolutePath());
+
+        if (!externalClasses.isEmpty())
+        {
+            final UnknownElement externalClassesElement = createElement(yguard, "externalclasses");
+            for (File externalClass : externalClasses)
+            {
+                createElement(externalClassesElement, "pathelement", "location", externalClass.getAbsolutePath());
+            }
+        }
+
+        final UnknownElement rename = createElement(yguard, "rename",
+                "logfile", logFile.getAbsolutePath(),
+                "conservemanifest", String.valueOf(configuration.conservemanifest),
+                "replaceClassNameStrings", String.valueOf(configuration.replaceClassNameStrings));
+        if (configuration.mainclass != null && configuration.mainclass.length() != 0)
+        {
+            rename.getWrapper().setAttribute("mainclass", configuration.mainclass);
+        }
+
+        if (configuration.errorChecking)
+        {
+            createElement(rename, "property", "name", "error-checking", "value", "pedantic");
+        }
+
+        if (!keepers.isEmpty())
+        {
+            final UnknownElement keep = createElement(rename, "keep",
+                    "sourcefile", String.valueOf(configuration.sourcefile),
+                    "linenumbertable", String.valueOf(configuration.linenumbertable),
+                    "localvariabletable", String.valueOf(configuration.localvariabletable),
+                    "localvariabletypetable", String.valueOf(configuration.localvariabletypetable),
+                    "runtimevisibleannotations", String.valueOf(configuration.runtimevisibleannotations),
+                    "runtimevisibleparameterannotations", String.valueOf(configuration.runtimevisibleparameterannotations),
+                    "runtimeinvisibleannotations", String.valueOf(configuration.runtimeinvisibleannotations),
+                    "runtimeinvisibleparameterannotations", String.valueOf(configuration.runtimeinvisibleparameterannotations));
+            for (Keeper keeper : keepers)
+            {
+                if (keeper.isPattern())
+                {
+                    // same structure as Keeper.toAntElement
+                    final UnknownElement element;
+                    if (keeper.getType() == Keeper.Type.CLASS)
+                    {
+                        element = createElement(keep, "class");
+                    }
+                    else if (keeper.isAllMembers())
+                    {
+                        element = createElement(keep, "class", "classes", "none", keeper.getType().getName() + "s", "private");
+                    }
+                    else
+                    {
+                        element = createElement(keep, keeper.getType().getName(), "name", keeper.getName());
+                    }
+                    createElement(createElement(element, "patternset"), "include", "name", keeper.getClassPattern());
+                    continue;
+                }
+                final UnknownElement element = createElement(keep, keeper.getType().getName(), "name", keeper.getName());
+                if (keeper.getType() != Keeper.Type.CLASS && keeper.getClazz() != null)
+                {
+                    element.getWrapper().setAttribute("class", keeper.getClazz());
+                }
+            }
+        }
+
+        return target;
+    }
+
+    /**
+     * Creates an element the way {@link org.apache.tools.ant.helper.ProjectHelper2} does while parsing.
+     * @param parent the parent element, or <tt>null</tt> for a task
+     * @param name the element name
+     * @param attributes attribute names and values, alternating
+     * @return the element
+     */
+    @NotNull
+    private UnknownElement createElement(@Nullable UnknownElement parent, @NotNull String name, @NotNull String... attributes)
+    {
+        final UnknownElement element = new UnknownElement(name);
+        element.setProject(project);
+        element.setNamespace("");
+        element.setQName(name);
+        element.setTaskType(name);
+        element.setTaskName(name);
+
+        final RuntimeConfigurable wrapper = new RuntimeConfigurable(element, name);
+        for (int i = 0; i + 1 < attributes.length; i += 2)
+        {
+            wrapper.setAttribute(attributes[i], attributes[i + 1]);
+        }
+        if (parent != null)
+        {
+            parent.addChild(element);
+            parent.getWrapper().addChild(wrapper);
+        }
+        return element;
+    }
+}
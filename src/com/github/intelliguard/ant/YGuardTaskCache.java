@@ -0,0 +1,86 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.ant;
+
+import org.apache.tools.ant.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the yGuard task class loaded between obfuscation runs, so that only the first run pays for
+ * class loading and JIT warm-up. Entries are keyed by the path of the yGuard archive and replaced
+ * when the archive is modified.
+ */
+public class YGuardTaskCache
+{
+    public static final String YGUARD_TASK_NAME = "yguard";
+    public static final String YGUARD_TASK_CLASS = "com.yworks.yguard.YGuardTask";
+
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private static class Entry
+    {
+        private final long stamp;
+        private final Class<?> taskClass;
+
+        private Entry(long stamp, @NotNull Class<?> taskClass)
+        {
+            this.stamp = stamp;
+            this.taskClass = taskClass;
+        }
+    }
+
+    /**
+     * @param yGuardJar the yGuard archive
+     * @return the yGuard task class, loaded by a class loader with Ant's class loader as parent
+     * @throws ClassNotFoundException if the archive does not contain the yGuard task
+     * @throws MalformedURLException if the archive path can not be converted to an URL
+     */
+    @NotNull
+    public static synchronized Class<?> getTaskClass(@NotNull File yGuardJar) throws ClassNotFoundException, MalformedURLException
+    {
+        final String key = yGuardJar.getAbsolutePath();
+        final long stamp = yGuardJar.lastModified() ^ yGuardJar.length();
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.stamp == stamp)
+        {
+            return entry.taskClass;
+        }
+        final ClassLoader classLoader = new URLClassLoader(new URL[] { yGuardJar.toURI().toURL() }, Project.class.getClassLoader());
+        final Class<?> taskClass = Class.forName(YGUARD_TASK_CLASS, true, classLoader);
+        entries.put(key, new Entry(stamp, taskClass));
+        return taskClass;
+    }
+
+    /**
+     * Defines the cached yGuard task in <tt>project</tt>, replacing a <tt>&lt;taskdef&gt;</tt>.
+     * @param project the project
+     * @param yGuardJar the yGuard archive
+     * @throws ClassNotFoundException if the archive does not contain the yGuard task
+     * @throws MalformedURLException if the archive path can not be converted to an URL
+     */
+    public static void defineTask(@NotNull Project project, @NotNull File yGuardJar) throws ClassNotFoundException, MalformedURLException
+    {
+        project.addTaskDefinition(YGUARD_TASK_NAME, getTaskClass(yGuardJar));
+    }
+}
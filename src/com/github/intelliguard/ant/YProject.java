@@ -19,6 +19,7 @@ package com.github.intelliguard.ant;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
 import org.jetbrains.annotations.NotNull;
 import com.github.intelliguard.runner.RunProgress;
 
@@ -32,9 +33,19 @@ public class YProject extends Project
 {
     public YProject(@NotNull final RunProgress runProgress)
     {
+        final YGuardMilestones milestones = new YGuardMilestones(runProgress);
 
         addBuildListener(new BuildListener()
         {
+            private void checkCanceled()
+            {
+                // yGuard does not know about ProcessCanceledException, abort it the Ant way
+                if (runProgress.isCanceled())
+                {
+                    throw new BuildException("Obfuscation canceled");
+                }
+            }
+
             public void buildStarted(BuildEvent buildEvent)
             {
             }
@@ -53,10 +64,16 @@ public class YProject extends Project
 
             public void taskStarted(BuildEvent buildEvent)
             {
+                checkCanceled();
+                milestones.taskStarted();
             }
 
             public void taskFinished(BuildEvent buildEvent)
             {
+                if (buildEvent.getException() == null)
+                {
+                    milestones.taskFinished();
+                }
             }
 
             public void messageLogged(BuildEvent buildEvent)
@@ -64,8 +81,17 @@ public class YProject extends Project
                 final String message = buildEvent.getMessage();
                 if (message != null)
                 {
-                    runProgress.markMessage(message);
+                    if (buildEvent.getPriority() >= Project.MSG_VERBOSE)
+                    {
+                        runProgress.markVerbose(message);
+                    }
+                    else
+                    {
+                        runProgress.markMessage(message);
+                    }
+                    milestones.messageLogged(message);
                 }
+                checkCanceled();
             }
         });
     }
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.facet;
+
+import com.github.intelliguard.model.Keeper;
+import com.github.intelliguard.model.KeeperIndex;
+import com.github.intelliguard.util.PsiUtils;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.IndexNotReadyException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.AnnotatedMembersSearch;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keepers for the classes, methods and fields of a module which are annotated with one of the
+ * annotations in {@link GuardFacetConfiguration#keepAnnotations}. They are found with the annotation
+ * index instead of walking the module's PSI, and cached until the code structure or the
+ * configuration changes.
+ */
+public class AnnotationKeepers
+{
+    private static final Logger LOG = Logger.getInstance("#com.github.intelliguard.facet.AnnotationKeepers");
+    private static final Key<CachedValue<AnnotationKeepers>> CACHE_KEY = Key.create("IntelliGuard.AnnotationKeepers");
+
+    // the configuration the keepers were searched for, a facet gets a new one when it is recreated
+    private final GuardFacetConfiguration configuration;
+    private final List<Keeper> keepers;
+    private final KeeperIndex index;
+
+    private AnnotationKeepers(@NotNull GuardFacetConfiguration configuration, @NotNull List<Keeper> keepers)
+    {
+        this.configuration = configuration;
+        this.keepers = Collections.unmodifiableList(keepers);
+        this.index = new KeeperIndex(keepers);
+    }
+
+    /**
+     * Must be called in a read action, with indexes available.
+     * @param module the module
+     * @param configuration the obfuscation configuration of the module
+     * @return the annotation keepers of the module
+     */
+    @NotNull
+    public static AnnotationKeepers getInstance(@NotNull final Module module, @NotNull final GuardFacetConfiguration configuration)
+    {
+        CachedValue<AnnotationKeepers> cachedValue = module.getUserData(CACHE_KEY);
+        if (cachedValue != null)
+        {
+            final AnnotationKeepers annotationKeepers = cachedValue.getValue();
+            if (annotationKeepers.configuration == configuration)
+            {
+                return annotationKeepers;
+            }
+        }
+        cachedValue = CachedValuesManager.getManager(module.getProject()).createCachedValue(new CachedValueProvider<AnnotationKeepers>()
+        {
+            public Result<AnnotationKeepers> compute()
+            {
+                return Result.create(search(module, configuration),
+                        PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT, configuration.getModificationTracker());
+            }
+        }, false);
+        // a concurrent duplicate only costs one extra search
+        module.putUserData(CACHE_KEY, cachedValue);
+        return cachedValue.getValue();
+    }
+
+    /**
+     * @param facet the facet
+     * @return <tt>true</tt> if {@link #getAllKeepers(GuardFacet)} can be called on the event dispatch
+     * thread, that is if no keep annotations are configured or the indexes are available
+     */
+    public static boolean isAvailable(@NotNull GuardFacet facet)
+    {
+        return facet.getConfiguration().parseKeepAnnotations().isEmpty() || !DumbService.getInstance(facet.getModule().getProject()).isDumb();
+    }
+
+    /**
+     * The supported configured keepers followed by the annotation keepers, as passed to the obfuscator,
+     * see {@link Keeper#isSupported()}. Off the event dispatch thread this waits for indexing to finish.
+     * @param facet the facet
+     * @return all keepers
+     * @throws IndexNotReadyException on the event dispatch thread while indexing, see {@link #isAvailable(GuardFacet)}
+     */
+    @NotNull
+    public static List<Keeper> getAllKeepers(@NotNull final GuardFacet facet)
+    {
+        final GuardFacetConfiguration configuration = facet.getConfiguration();
+        final List<Keeper> all = new ArrayList<Keeper>();
+        for (Keeper keeper : configuration.getKeeperSnapshot().getKeepers())
+        {
+            if (keeper.isSupported())
+            {
+                all.add(keeper);
+            }
+            else
+            {
+                LOG.warn("Ignoring " + keeper.getType().getName() + " keeper with unsupported wildcard name " + keeper.getName());
+            }
+        }
+        if (configuration.parseKeepAnnotations().isEmpty())
+        {
+            return all;
+        }
+        final Computable<List<Keeper>> search = new Computable<List<Keeper>>()
+        {
+            public List<Keeper> compute()
+            {
+                return getInstance(facet.getModule(), configuration).getKeepers();
+            }
+        };
+        final Project project = facet.getModule().getProject();
+        if (!ApplicationManager.getApplication().isDispatchThread())
+        {
+            all.addAll(DumbService.getInstance(project).runReadActionInSmartMode(search));
+        }
+        else if (DumbService.getInstance(project).isDumb())
+        {
+            // leaving out the annotation keepers would obfuscate the annotated code
+            throw new IndexNotReadyException();
+        }
+        else
+        {
+            all.addAll(ApplicationManager.getApplication().runReadAction(search));
+        }
+        return all;
+    }
+
+    @NotNull
+    public List<Keeper> getKeepers()
+    {
+        return keepers;
+    }
+
+    /**
+     * @param element a class, method or field
+     * @return the annotation keepers which keep <tt>element</tt>, see {@link KeeperIndex#find(PsiElement)}
+     */
+    @NotNull
+    public List<Keeper> find(@NotNull PsiElement element)
+    {
+        return keepers.isEmpty() ? Collections.<Keeper>emptyList() : index.find(element);
+    }
+
+    @NotNull
+    private static AnnotationKeepers search(@NotNull Module module, @NotNull GuardFacetConfiguration configuration)
+    {
+        final List<String> annotationNames = configuration.parseKeepAnnotations();
+        final List<Keeper> keepers = new ArrayList<Keeper>();
+        if (annotationNames.isEmpty())
+        {
+            return new AnnotationKeepers(configuration, keepers);
+        }
+        final Project project = module.getProject();
+        final GlobalSearchScope scope = GlobalSearchScope.moduleScope(module);
+        for (String annotationName : annotationNames)
+        {
+            final PsiClass annotationClass = JavaPsiFacade.getInstance(project).findClass(annotationName, GlobalSearchScope.allScope(project));
+            if (annotationClass == null || !annotationClass.isAnnotationType())
+            {
+                continue;
+            }
+            for (PsiMember member : AnnotatedMembersSearch.search(annotationClass, scope).findAll())
+            {
+                final Keeper keeper = createKeeper(member);
+                if (keeper != null)
+                {
+                    keepers.add(keeper);
+                }
+            }
+        }
+        return new AnnotationKeepers(configuration, keepers);
+    }
+
+    @Nullable
+    private static Keeper createKeeper(@NotNull PsiMember member)
+    {
+        final String name = PsiUtils.getKeeperName(member);
+        if (name == null)
+        {
+            return null;
+        }
+        if (member instanceof PsiClass)
+        {
+            return Keeper.createSynthetic(Keeper.Type.CLASS, name, null);
+        }
+        final String clazz = PsiUtils.getKeeperName(member.getContainingClass());
+        if (clazz == null)
+        {
+            return null;
+        }
+        if (member instanceof PsiField)
+        {
+            return Keeper.createSynthetic(Keeper.Type.FIELD, name, clazz);
+        }
+        if (member instanceof PsiMethod && !((PsiMethod) member).isConstructor())
+        {
+            return Keeper.createSynthetic(Keeper.Type.METHOD, name, clazz);
+        }
+        return null;
+    }
+}
@@ -21,18 +21,30 @@ import com.intellij.facet.ui.FacetEditorTab;
 import com.intellij.facet.ui.FacetEditorContext;
 import com.intellij.facet.ui.FacetValidatorsManager;
 import com.intellij.openapi.util.InvalidDataException;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.WriteExternalException;
 import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.github.intelliguard.model.Keeper;
+import com.github.intelliguard.model.KeeperSnapshot;
 import com.github.intelliguard.model.JarConfig;
 import com.github.intelliguard.util.PsiUtils;
+import com.intellij.util.Function;
 import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -42,6 +54,8 @@ import java.util.ArrayList;
  */
 public class GuardFacetConfiguration implements FacetConfiguration, PersistentStateComponent<GuardFacetConfiguration>
 {
+    private static final Key<CachedValue<KeepStatus>> KEEP_STATUS_KEY = Key.create("IntelliGuard.KeepStatus");
+
     public String yGuardJar;
 
     public String inFile;
@@ -65,10 +79,36 @@ public class GuardFacetConfiguration implements FacetConfiguration, PersistentSt
     public boolean runtimeinvisibleannotations = true; // runtimeinvisibleannotations
     public boolean runtimeinvisibleparameterannotations = true; // runtimeinvisibleparameterannotations
 
+    // size cap of the obfuscation result cache in megabytes, 0 disables the cache
+    public int cacheSize = 256;
+
+    // run yGuard in a separate worker JVM with the given maximum heap in megabytes
+    public boolean outOfProcess;
+    public int workerHeapSize = 512;
+
+    // persisted form of the keepers, the unmodifiable list of the current snapshot once published
     public Collection<Keeper> keepers = new ArrayList<Keeper>();
 
+    // comma separated names of annotations which keep the annotated classes, methods and fields
+    public String keepAnnotations = "";
+
+    // comma separated names of classes and interfaces, in addition to the built in ones, whose subclasses are instantiated by reflection
+    public String reflectionBaseTypes = "";
+
     public JarConfig jarConfig = new JarConfig();
 
+    private volatile KeeperSnapshot keeperSnapshot;
+    private volatile long modificationCount;
+    private final ModificationTracker modificationTracker = new ModificationTracker()
+    {
+        public long getModificationCount()
+        {
+            // publishes a snapshot if the keepers were assigned directly
+            getKeeperSnapshot();
+            return modificationCount;
+        }
+    };
+
     public FacetEditorTab[] createEditorTabs(FacetEditorContext editorContext, FacetValidatorsManager validatorsManager)
     {
         return new FacetEditorTab[] {new GuardFacetEditorTab(this, editorContext, validatorsManager)};  //To change body of implemented methods use File | Settings | File Templates.
@@ -92,7 +132,7 @@ public class GuardFacetConfiguration implements FacetConfiguration, PersistentSt
         return this;
     }
 
-    public void loadState(GuardFacetConfiguration state)
+    public synchronized void loadState(GuardFacetConfiguration state)
     {
         this.yGuardJar = state.yGuardJar;
         this.inFile = state.inFile;
@@ -109,8 +149,13 @@ public class GuardFacetConfiguration implements FacetConfiguration, PersistentSt
         this.runtimevisibleannotations = state.runtimevisibleannotations;
         this.runtimevisibleparameterannotations = state.runtimevisibleparameterannotations;
         this.sourcefile = state.sourcefile;
-        this.keepers = state.keepers;
+        this.cacheSize = state.cacheSize;
+        this.outOfProcess = state.outOfProcess;
+        this.workerHeapSize = state.workerHeapSize;
+        this.keepAnnotations = state.keepAnnotations;
+        this.reflectionBaseTypes = state.reflectionBaseTypes;
         this.jarConfig= state.jarConfig;
+        publish(state.keepers);
     }
 
     public boolean equalsGlobalSettings(GuardFacetConfiguration that)
@@ -129,13 +174,86 @@ public class GuardFacetConfiguration implements FacetConfiguration, PersistentSt
         if (runtimevisibleannotations != that.runtimevisibleannotations) return false;
         if (runtimevisibleparameterannotations != that.runtimevisibleparameterannotations) return false;
         if (sourcefile != that.sourcefile) return false;
+        if (cacheSize != that.cacheSize) return false;
+        if (outOfProcess != that.outOfProcess) return false;
+        if (workerHeapSize != that.workerHeapSize) return false;
         if (mainclass != null ? !mainclass.equals(that.mainclass) : that.mainclass != null) return false;
         if (yGuardJar != null ? !yGuardJar.equals(that.yGuardJar) : that.yGuardJar != null) return false;
+        if (keepAnnotations != null ? !keepAnnotations.equals(that.keepAnnotations) : that.keepAnnotations != null) return false;
+        if (reflectionBaseTypes != null ? !reflectionBaseTypes.equals(that.reflectionBaseTypes) : that.reflectionBaseTypes != null) return false;
 
         return true;
     }
 
+    /**
+     * The keep decision for an element. It is cached on the element until the PSI or the keepers
+     * and settings change, so repeated highlighting of unchanged code does no keeper lookups.
+     * @param element a class, method or field
+     * @return the keep status
+     */
+    @NotNull
+    public KeepStatus getKeepStatus(@NotNull final PsiElement element)
+    {
+        CachedValue<KeepStatus> cachedValue = element.getUserData(KEEP_STATUS_KEY);
+        if (cachedValue != null)
+        {
+            final KeepStatus status = cachedValue.getValue();
+            if (status.getConfiguration() == this)
+            {
+                return status;
+            }
+        }
+        cachedValue = CachedValuesManager.getManager(element.getProject()).createCachedValue(new CachedValueProvider<KeepStatus>()
+        {
+            public Result<KeepStatus> compute()
+            {
+                return Result.create(computeKeepStatus(element), PsiModificationTracker.MODIFICATION_COUNT, modificationTracker);
+            }
+        }, false);
+        element.putUserData(KEEP_STATUS_KEY, cachedValue);
+        return cachedValue.getValue();
+    }
+
+    /**
+     * Like {@link #getKeepStatus(PsiElement)} but without caching, for one-off walks over many elements.
+     * @param element a class, method or field
+     * @return the keep status
+     */
+    @NotNull
+    public KeepStatus computeKeepStatus(@NotNull PsiElement element)
+    {
+        return new KeepStatus(this, computeKeepers(element), computeKeptByMainClass(element));
+    }
+
+    /**
+     * Changes the Main-Class and the modification count, so that cached keep status is recomputed.
+     * Assigning {@link #mainclass} directly is only for deserialization.
+     * @param mainClass the fully qualified name of the Main-Class, empty for none
+     */
+    public synchronized void setMainClass(@NotNull String mainClass)
+    {
+        if (!mainClass.equals(mainclass))
+        {
+            mainclass = mainClass;
+            modificationCount++;
+        }
+    }
+
     public boolean isKeptByMainClass(PsiElement element)
+    {
+        return getKeepStatus(element).isKeptByMainClass();
+    }
+
+    /**
+     * @param psiElement a class, method or field
+     * @return the keepers of the element, shared with the cache and not to be modified
+     */
+    public Keeper[] findConfiguredGuardKeepers(PsiElement psiElement)
+    {
+        return getKeepStatus(psiElement).getKeepers();
+    }
+
+    private boolean computeKeptByMainClass(PsiElement element)
     {
         if (mainclass.length() == 0)
         {
@@ -154,37 +272,137 @@ public class GuardFacetConfiguration implements FacetConfiguration, PersistentSt
         return false;
     }
 
-    public Keeper[] findConfiguredGuardKeepers(PsiElement psiElement)
+    private Keeper[] computeKeepers(PsiElement psiElement)
     {
-        // special treatment for constructors
-        PsiMethod constructor = null;
-        if (psiElement instanceof PsiMethod)
+        List<Keeper> found = getKeeperSnapshot().find(psiElement);
+        if (!parseKeepAnnotations().isEmpty())
         {
-            PsiMethod psiMethod = (PsiMethod) psiElement;
-            if (psiMethod.isConstructor())
+            final Module module = ModuleUtil.findModuleForPsiElement(psiElement);
+            if (module != null)
             {
-                constructor = psiMethod;
+                final List<Keeper> annotated = AnnotationKeepers.getInstance(module, this).find(psiElement);
+                if (!annotated.isEmpty())
+                {
+                    found = new ArrayList<Keeper>(found);
+                    found.addAll(annotated);
+                }
             }
         }
+        return found.toArray(new Keeper[found.size()]);
+    }
+
+    /**
+     * @return the names in {@link #keepAnnotations}
+     */
+    @NotNull
+    public List<String> parseKeepAnnotations()
+    {
+        return splitNames(keepAnnotations);
+    }
 
-        Collection<Keeper> found = new ArrayList<Keeper>();
-        for (Keeper keeper : keepers)
+    /**
+     * @return the names in {@link #reflectionBaseTypes}
+     */
+    @NotNull
+    public List<String> parseReflectionBaseTypes()
+    {
+        return splitNames(reflectionBaseTypes);
+    }
+
+    @NotNull
+    private static List<String> splitNames(String text)
+    {
+        final List<String> names = new ArrayList<String>();
+        if (text != null)
         {
-            if (constructor != null)
+            for (String name : text.split("[,\\s]+"))
             {
-                if (keeper.getType() == Keeper.Type.CLASS && keeper.getName() != null)
+                if (name.length() != 0)
                 {
-                    if (keeper.getName().equals(PsiUtils.getKeeperName(constructor.getContainingClass())))
-                    {
-                        found.add(keeper);
-                    }
+                    names.add(name);
                 }
             }
-            else if (keeper.satisfies(psiElement))
+        }
+        return names;
+    }
+
+    /**
+     * @return a tracker which changes with the keepers and settings, for cached values derived from them
+     */
+    @NotNull
+    public ModificationTracker getModificationTracker()
+    {
+        return modificationTracker;
+    }
+
+    /**
+     * The current keepers. Taking the snapshot does not lock, and it never changes once taken.
+     * @return the snapshot
+     */
+    @NotNull
+    public KeeperSnapshot getKeeperSnapshot()
+    {
+        final KeeperSnapshot snapshot = keeperSnapshot;
+        if (snapshot != null && snapshot.getKeepers() == keepers)
+        {
+            return snapshot;
+        }
+        synchronized (this)
+        {
+            // first use, or the keepers were assigned directly, e.g. by deserialization
+            if (keeperSnapshot == null || keeperSnapshot.getKeepers() != keepers)
             {
-                found.add(keeper);
+                publish(keepers);
             }
+            return keeperSnapshot;
         }
-        return found.toArray(new Keeper[found.size()]);
+    }
+
+    /**
+     * Publishes a snapshot with <tt>keeper</tt> added.
+     * @param keeper the keeper
+     */
+    public synchronized void addKeeper(@NotNull Keeper keeper)
+    {
+        final List<Keeper> list = new ArrayList<Keeper>(getKeeperSnapshot().getKeepers());
+        list.add(keeper);
+        publish(list);
+    }
+
+    /**
+     * Publishes a snapshot with <tt>keeper</tt> removed.
+     * @param keeper the keeper
+     */
+    public synchronized void removeKeeper(@NotNull Keeper keeper)
+    {
+        final List<Keeper> list = new ArrayList<Keeper>(getKeeperSnapshot().getKeepers());
+        if (list.remove(keeper))
+        {
+            publish(list);
+        }
+    }
+
+    /**
+     * Publishes a snapshot in which every keeper is replaced by the result of <tt>update</tt>. Keepers
+     * in a published snapshot must not be changed, so <tt>update</tt> returns a changed copy, see
+     * {@link Keeper#copy()}, or the keeper itself if it is unchanged.
+     * @param update the update
+     */
+    public synchronized void updateKeepers(@NotNull Function<Keeper, Keeper> update)
+    {
+        final List<Keeper> list = new ArrayList<Keeper>();
+        for (Keeper keeper : getKeeperSnapshot().getKeepers())
+        {
+            list.add(update.fun(keeper));
+        }
+        publish(list);
+    }
+
+    private synchronized void publish(@NotNull Collection<Keeper> list)
+    {
+        final KeeperSnapshot snapshot = new KeeperSnapshot(list, modificationCount + 1);
+        keepers = snapshot.getKeepers();
+        keeperSnapshot = snapshot;
+        modificationCount = snapshot.getVersion();
     }
 }
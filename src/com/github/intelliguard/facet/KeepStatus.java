@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.facet;
+
+import com.github.intelliguard.model.Keeper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The keep decision for one element, see {@link GuardFacetConfiguration#getKeepStatus(com.intellij.psi.PsiElement)}.
+ */
+public class KeepStatus
+{
+    private static final Keeper[] NO_KEEPERS = new Keeper[0];
+
+    private final GuardFacetConfiguration configuration;
+    private final Keeper[] keepers;
+    private final boolean keptByMainClass;
+
+    KeepStatus(@NotNull GuardFacetConfiguration configuration, @NotNull Keeper[] keepers, boolean keptByMainClass)
+    {
+        this.configuration = configuration;
+        this.keepers = keepers.length == 0 ? NO_KEEPERS : keepers;
+        this.keptByMainClass = keptByMainClass;
+    }
+
+    @NotNull
+    GuardFacetConfiguration getConfiguration()
+    {
+        return configuration;
+    }
+
+    /**
+     * @return the keepers of the element, shared with the cache and not to be modified
+     */
+    @NotNull
+    public Keeper[] getKeepers()
+    {
+        return keepers;
+    }
+
+    public boolean isKeptByMainClass()
+    {
+        return keptByMainClass;
+    }
+
+    public boolean isKept()
+    {
+        return keptByMainClass || keepers.length != 0;
+    }
+}
@@ -47,6 +47,12 @@ public class AddKeepFix implements LocalQuickFix
     @NotNull
     public String getName()
     {
+        if (keeper.isPattern())
+        {
+            return keeper.getType() == Keeper.Type.CLASS
+                    ? "Keep classes matching " + keeper.getName() + " from obfuscation"
+                    : "Keep " + keeper.getType().getName() + " " + keeper.getName() + " in classes matching " + keeper.getClassPattern() + " from obfuscation";
+        }
         return "Keep " + keeper.getType().getName() + " from obfuscation" + (keeper.getType() == Keeper.Type.CLASS ? "" : (keeper.getClazz() == null ? " in all classes" : " in class " + keeper.getClazz()));
     }
 
@@ -58,7 +64,7 @@ public class AddKeepFix implements LocalQuickFix
 
     public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor)
     {
-        configuration.keepers.add(keeper);
+        configuration.addKeeper(keeper);
         GuardInspectionBase.alertGuardMarkers(element);
     }
 }
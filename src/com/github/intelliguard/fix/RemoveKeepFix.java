@@ -47,6 +47,10 @@ public class RemoveKeepFix implements LocalQuickFix
     @NotNull
     public String getName()
     {
+        if (keeper.isPattern())
+        {
+            return "Remove " + keeper.getType().getName() + " keeper matching " + keeper.getClassPattern();
+        }
         return "Remove " + keeper.getType().getName() + " keeper" + (keeper.getType() == Keeper.Type.CLASS ? "" : (keeper.getClazz() == null ? " in all classes" : " in class " + keeper.getClazz()));
     }
 
@@ -58,7 +62,7 @@ public class RemoveKeepFix implements LocalQuickFix
 
     public void applyFix(@NotNull Project project, @NotNull ProblemDescriptor descriptor)
     {
-        configuration.keepers.remove(keeper);
+        configuration.removeKeeper(keeper);
         GuardInspectionBase.alertGuardMarkers(element);
     }
 }
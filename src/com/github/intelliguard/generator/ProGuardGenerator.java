@@ -16,6 +16,7 @@
 
 package com.github.intelliguard.generator;
 
+import com.github.intelliguard.facet.AnnotationKeepers;
 import com.github.intelliguard.facet.GuardFacet;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.model.Keeper;
@@ -37,10 +38,16 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ProGuardGenerator
 {
+    /**
+     * @param facet the facet
+     * @return the ProGuard configuration
+     * @throws com.intellij.openapi.project.IndexNotReadyException on the event dispatch thread while indexing,
+     * see {@link AnnotationKeepers#isAvailable(GuardFacet)}
+     */
     public static String generatePro(@NotNull GuardFacet facet)
     {
         final GuardFacetConfiguration configuration = facet.getConfiguration();
-        final String inFile = configuration.inFile != null ? new File(configuration.inFile).getAbsolutePath() : "injar.jar";
+        final String inFile = configuration.inFile != null && configuration.inFile.length() != 0 ? new File(configuration.inFile).getAbsolutePath() : "injar.jar";
         final String outFile = configuration.outFile != null ? new File(configuration.outFile).getAbsolutePath() : "outjar.jar";
 
         final StringBuilder sb = new StringBuilder();
@@ -97,7 +104,7 @@ public class ProGuardGenerator
             sb.append(MessageFormat.format(KEEP_MAIN_CLASS, configuration.mainclass));
         }
 
-        for (Keeper keeper : configuration.keepers)
+        for (Keeper keeper : AnnotationKeepers.getAllKeepers(facet))
         {
             switch (keeper.getType())
             {
@@ -105,8 +112,16 @@ public class ProGuardGenerator
                     sb.append(MessageFormat.format(KEEP_CLASS, keeper.getName()));
                     break;
                 default:
+                    // class patterns use the same wildcards in ProGuard
                     sb.append(MessageFormat.format(OPEN_KEEP_CLASS_MEMBERS, keeper.getClazz() == null ? "*" : keeper.getClazz()));
-                    sb.append(MessageFormat.format(KEEP_CLASS_MEMBER, keeper.getName()));
+                    if (keeper.isAllMembers())
+                    {
+                        sb.append(MessageFormat.format(KEEP_ALL_CLASS_MEMBERS, keeper.getType() == Keeper.Type.METHOD ? "<methods>" : "<fields>"));
+                    }
+                    else
+                    {
+                        sb.append(MessageFormat.format(KEEP_CLASS_MEMBER, keeper.getName()));
+                    }
                     sb.append(CLOSE_KEEP_CLASS_MEMBERS);
                     break;
             }
@@ -135,6 +150,7 @@ public class ProGuardGenerator
     private static final String KEEP_CLASS = "-keep class {0}\n";
     private static final String OPEN_KEEP_CLASS_MEMBERS = "-keepclassmembernames class {0} '{'\n";
     private static final String KEEP_CLASS_MEMBER = "    *** {0};\n";
+    private static final String KEEP_ALL_CLASS_MEMBERS = "    {0};\n";
     private static final String CLOSE_KEEP_CLASS_MEMBERS = "}\n";
     private static final String KEEP_MAIN_CLASS = "-keepclasseswithmembers public class {0} '{'\n    public static void main(java.lang.String[]);\n'}'\n";
 }
@@ -16,6 +16,7 @@
 
 package com.github.intelliguard.generator;
 
+import com.github.intelliguard.facet.AnnotationKeepers;
 import com.github.intelliguard.facet.GuardFacet;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.model.Keeper;
@@ -26,6 +27,7 @@ import com.intellij.util.PathsList;
 
 import java.text.MessageFormat;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.jetbrains.annotations.NotNull;
@@ -43,29 +45,57 @@ public class YGuardGenerator
     public static String generateBuildXml(@NotNull GuardFacet facet)
     {
         final GuardFacetConfiguration configuration = facet.getConfiguration();
-        final String inFile = configuration.inFile != null ? new File(configuration.inFile).getAbsolutePath() : "injar.jar";
+        final String inFile = configuration.inFile != null && configuration.inFile.length() != 0 ? new File(configuration.inFile).getAbsolutePath() : "injar.jar";
+        return generateBuildXml(facet, inFile);
+    }
+
+    public static String generateBuildXml(@NotNull GuardFacet facet, @NotNull String inFile)
+    {
+        final GuardFacetConfiguration configuration = facet.getConfiguration();
         final File file = configuration.outFile != null ? new File(configuration.outFile) : null;
         final String outFile = file != null ? file.getAbsolutePath() : "outjar.jar";
+        final String logFile = file != null ? getLogFile(file).getAbsolutePath() : "logfile.xml";
+        return generateBuildXml(facet, inFile, outFile, logFile);
+    }
+
+    public static String generateBuildXml(@NotNull GuardFacet facet, @NotNull String inFile, @NotNull String outFile, @NotNull String logFile)
+    {
+        return generateBuildXml(facet, inFile, outFile, logFile, true);
+    }
+
+    /**
+     * @param facet the facet
+     * @param inFile the jar to obfuscate
+     * @param outFile the obfuscated jar
+     * @param logFile the yGuard log file
+     * @param taskDef <tt>false</tt> to leave out the <tt>&lt;taskdef&gt;</tt> when the caller defines the yGuard task
+     * @return the build file
+     * @throws com.intellij.openapi.project.IndexNotReadyException on the event dispatch thread while indexing,
+     * see {@link AnnotationKeepers#isAvailable(GuardFacet)}
+     */
+    public static String generateBuildXml(@NotNull GuardFacet facet, @NotNull String inFile, @NotNull String outFile, @NotNull String logFile, boolean taskDef)
+    {
+        final GuardFacetConfiguration configuration = facet.getConfiguration();
         final String yguardFile = configuration.yGuardJar != null ? new File(configuration.yGuardJar).getAbsolutePath() : "yguard.jar";
-        final String logFile = file != null ? new File(file.getParent(), file.getName() + "-yguard.xml").getAbsolutePath() : "logfile.xml";
 
         final StringBuilder sb = new StringBuilder();
 
         sb.append(MessageFormat.format(OPEN_PROJECT, YGUARD_TARGET_NAME));
         sb.append(MessageFormat.format(OPEN_TARGET, YGUARD_TARGET_NAME));
-        sb.append(MessageFormat.format(TASK_DEF, yguardFile));
+        if (taskDef)
+        {
+            sb.append(MessageFormat.format(TASK_DEF, yguardFile));
+        }
         sb.append(OPEN_YGUARD);
         sb.append(MessageFormat.format(IN_OUT_PAIR, inFile, outFile));
 
-        final PathsList dependenciesList = ProjectRootsTraversing.collectRoots(facet.getModule(), ProjectRootsTraversing.LIBRARIES_AND_JDK);
-        final List<VirtualFile> externalDependencies = dependenciesList.getVirtualFiles();
+        final List<File> externalDependencies = getExternalClasses(facet);
         if (!externalDependencies.isEmpty())
         {
             sb.append(OPEN_EXTERNAL_CLASSES);
-            for (VirtualFile dependencyJar : externalDependencies)
+            for (File dependencyJar : externalDependencies)
             {
-                final String path = VfsUtil.virtualToIoFile(dependencyJar).getAbsolutePath();
-                sb.append(MessageFormat.format(EXTERNAL_PATH_ELEMENT, path));
+                sb.append(MessageFormat.format(EXTERNAL_PATH_ELEMENT, dependencyJar.getAbsolutePath()));
             }
             sb.append(CLOSE_EXTERNAL_CLASSES);
         }
@@ -90,7 +120,8 @@ public class YGuardGenerator
             sb.append(PEDANTIC_ERROR_CHECKING);
         }
 
-        if (!configuration.keepers.isEmpty())
+        final List<Keeper> keepers = AnnotationKeepers.getAllKeepers(facet);
+        if (!keepers.isEmpty())
         {
             final String keep = MessageFormat.format(OPEN_KEEP,
                     configuration.sourcefile,
@@ -102,7 +133,7 @@ public class YGuardGenerator
                     configuration.runtimeinvisibleannotations,
                     configuration.runtimeinvisibleparameterannotations);
             sb.append(keep);
-            for (Keeper keeper : configuration.keepers)
+            for (Keeper keeper : keepers)
             {
                 sb.append("                    ");
                 sb.append(keeper.toAntElement());
@@ -119,6 +150,32 @@ public class YGuardGenerator
         return sb.toString();
     }
 
+    /**
+     * @param facet the facet
+     * @return the libraries and JDK classes of the facet's module, passed to yGuard as external classes
+     */
+    @NotNull
+    public static List<File> getExternalClasses(@NotNull GuardFacet facet)
+    {
+        final PathsList dependenciesList = ProjectRootsTraversing.collectRoots(facet.getModule(), ProjectRootsTraversing.LIBRARIES_AND_JDK);
+        final List<File> externalClasses = new ArrayList<File>();
+        for (VirtualFile dependencyJar : dependenciesList.getVirtualFiles())
+        {
+            externalClasses.add(VfsUtil.virtualToIoFile(dependencyJar));
+        }
+        return externalClasses;
+    }
+
+    /**
+     * @param outFile the obfuscated jar
+     * @return the yGuard log file written next to <tt>outFile</tt>
+     */
+    @NotNull
+    public static File getLogFile(@NotNull File outFile)
+    {
+        return new File(outFile.getParent(), outFile.getName() + "-yguard.xml");
+    }
+
     private static final String OPEN_PROJECT = "<project default=\"{0}\" name=\"yguard\" basedir=\".\">\n";
     private static final String OPEN_TARGET = "    <target name=\"{0}\">\n";
     private static final String OPEN_YGUARD = "        <yguard>\n";
@@ -97,11 +97,7 @@ public class GuardGutterRendererComputation implements Computable<List<GuardGutt
 
             private void checkElement(PsiElement element, String type)
             {
-                if (guardFacet.getConfiguration().findConfiguredGuardKeepers(element).length != 0)
-                {
-                    return;
-                }
-                if (guardFacet.getConfiguration().isKeptByMainClass(element))
+                if (guardFacet.getConfiguration().getKeepStatus(element).isKept())
                 {
                     return;
                 }
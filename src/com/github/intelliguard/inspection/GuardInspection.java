@@ -16,11 +16,13 @@
 
 package com.github.intelliguard.inspection;
 
+import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.codeInspection.LocalQuickFix;
 import com.intellij.codeInspection.ProblemHighlightType;
 import com.intellij.psi.*;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.facet.KeepStatus;
 import com.github.intelliguard.model.Keeper;
 import com.github.intelliguard.util.PsiUtils;
 import com.github.intelliguard.util.InspectionUtils;
@@ -65,7 +67,7 @@ public class GuardInspection extends GuardInspectionBase
 
     @NotNull
     @Override
-    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly)
+    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly, @NotNull final LocalInspectionToolSession session)
     {
         return new JavaElementVisitor()
         {
@@ -81,16 +83,17 @@ public class GuardInspection extends GuardInspectionBase
                     return;
                 }
                 
-                GuardFacetConfiguration configuration = getLocalConfiguration();
+                GuardFacetConfiguration configuration = getLocalConfiguration(session);
                 if (configuration != null)
                 {
-                    if (configuration.isKeptByMainClass(aClass))
+                    final KeepStatus status = configuration.getKeepStatus(aClass);
+                    if (status.isKeptByMainClass())
                     {
                         holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass), "Class is not obfuscated due to Main-Class", ProblemHighlightType.INFORMATION);
                     }
                     else
                     {
-                        final Keeper[] configuredGuardKeepers = configuration.findConfiguredGuardKeepers(aClass);
+                        final Keeper[] configuredGuardKeepers = status.getKeepers();
                         if (configuredGuardKeepers.length != 0)
                         {
                             holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass), "Class is not obfuscated", ProblemHighlightType.INFORMATION, createRemoveKeeperFixes(configuration, configuredGuardKeepers, aClass));
@@ -113,7 +116,7 @@ public class GuardInspection extends GuardInspectionBase
                     return;
                 }
 
-                GuardFacetConfiguration configuration = getLocalConfiguration();
+                GuardFacetConfiguration configuration = getLocalConfiguration(session);
                 if (configuration != null)
                 {
                     final Keeper[] configuredGuardKeepers = configuration.findConfiguredGuardKeepers(field);
@@ -138,16 +141,17 @@ public class GuardInspection extends GuardInspectionBase
                     return;
                 }
 
-                GuardFacetConfiguration configuration = getLocalConfiguration();
+                GuardFacetConfiguration configuration = getLocalConfiguration(session);
                 if (configuration != null && !InspectionUtils.isDefinedInLibrary(method))
                 {
-                    if (configuration.isKeptByMainClass(method))
+                    final KeepStatus status = configuration.getKeepStatus(method);
+                    if (status.isKeptByMainClass())
                     {
                         holder.registerProblem(InspectionUtils.getNameIdentifierElement(method), "Method is not obfuscated due to Main-Class", ProblemHighlightType.INFORMATION);
                     }
                     else
                     {
-                        final Keeper[] configuredGuardKeepers = configuration.findConfiguredGuardKeepers(method);
+                        final Keeper[] configuredGuardKeepers = status.getKeepers();
                         if (configuredGuardKeepers.length != 0)
                         {
                             holder.registerProblem(InspectionUtils.getNameIdentifierElement(method), "Method is not obfuscated", ProblemHighlightType.INFORMATION, createRemoveKeeperFixes(configuration, configuredGuardKeepers, method));
@@ -174,6 +178,15 @@ public class GuardInspection extends GuardInspectionBase
 
         fixes.add(new AddKeepFix(configuration, keeper, aClass));
 
+        final String packageName = PsiUtils.getPackageName(aClass);
+        if (packageName != null && packageName.length() != 0)
+        {
+            keeper = new Keeper();
+            keeper.setType(Keeper.Type.CLASS);
+            keeper.setName(packageName + ".**");
+            fixes.add(new AddKeepFix(configuration, keeper, aClass));
+        }
+
         return fixes.toArray(new LocalQuickFix[fixes.size()]);
     }
 
@@ -246,7 +259,11 @@ public class GuardInspection extends GuardInspectionBase
         Collection<LocalQuickFix> fixes = new ArrayList<LocalQuickFix>();
         for (Keeper keeper : keepers)
         {
-            fixes.add(new RemoveKeepFix(configuration, keeper, element));
+            // annotation keepers are removed by removing the annotation
+            if (!keeper.isSynthetic())
+            {
+                fixes.add(new RemoveKeepFix(configuration, keeper, element));
+            }
         }
         return fixes.toArray(new LocalQuickFix[fixes.size()]);
     }
@@ -18,7 +18,6 @@ package com.github.intelliguard.inspection;
 
 import com.intellij.codeInspection.LocalInspectionTool;
 import com.intellij.codeInspection.LocalInspectionToolSession;
-import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.openapi.module.ModuleType;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
@@ -29,6 +28,7 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleUtil;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.JDOMUtil;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.ide.plugins.PluginBean;
@@ -43,10 +43,19 @@ import org.jetbrains.annotations.Nullable;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
+import org.jdom.Namespace;
+import org.jdom.filter.ElementFilter;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
@@ -56,8 +65,39 @@ import java.net.URL;
  */
 public abstract class GuardInspectionBase extends LocalInspectionTool
 {
-    private GuardFacetConfiguration localConfiguration;
-    private PluginBean localPluginDescriptor;
+    private static final Key<SessionState> SESSION_STATE_KEY = Key.create("IntelliGuard.InspectionSessionState");
+    private static final Key<PluginDescriptorIndex> PLUGIN_DESCRIPTOR_KEY = Key.create("IntelliGuard.PluginDescriptorIndex");
+    private static final String XINCLUDE_NAMESPACE = "http://www.w3.org/2001/XInclude";
+
+    /**
+     * The per-file state of the obfuscation inspections. It lives in the inspection session, which
+     * all tools share for one file and which may be used by several tools at once.
+     */
+    private static class SessionState
+    {
+        private final PsiFile file;
+        private final GuardFacetConfiguration configuration;
+        private volatile boolean pluginDescriptorLoaded;
+        private volatile PluginDescriptorIndex pluginDescriptor;
+
+        private SessionState(@NotNull PsiFile file)
+        {
+            this.file = file;
+            this.configuration = getConfiguration(file);
+        }
+
+        @Nullable
+        private PluginDescriptorIndex getPluginDescriptor()
+        {
+            // looked up on demand, at worst twice when two tools ask at the same time
+            if (!pluginDescriptorLoaded)
+            {
+                pluginDescriptor = getPluginDescriptorIndex(file);
+                pluginDescriptorLoaded = true;
+            }
+            return pluginDescriptor;
+        }
+    }
 
     @Nls
     @NotNull
@@ -72,26 +112,15 @@ public abstract class GuardInspectionBase extends LocalInspectionTool
         return true;
     }
 
-    @Override
-    public void inspectionStarted(LocalInspectionToolSession session, boolean isOnTheFly) {
-        this.localConfiguration = getConfiguration(session.getFile());
-
-        this.localPluginDescriptor = getPluginDescriptor(session.getFile());
-
-        super.inspectionStarted(session, isOnTheFly);
-    }
-
-    @Override
-    public void inspectionFinished(LocalInspectionToolSession session, ProblemsHolder problemsHolder) {
-        this.localConfiguration = null;
-
-        this.localPluginDescriptor = null;
-
-        super.inspectionFinished(session, problemsHolder);
-    }
-
+    /**
+     * The plugin descriptor of a plugin module. It is parsed once and cached on the module until the
+     * modification stamp of <tt>META-INF/plugin.xml</tt> or of a file it includes changes. A descriptor
+     * which can not be parsed is cached the same way.
+     * @param element an element in the module
+     * @return the class names declared in the descriptor, or <tt>null</tt> if not a plugin module
+     */
     @Nullable
-    public static PluginBean getPluginDescriptor(@NotNull PsiElement element)
+    public static PluginDescriptorIndex getPluginDescriptorIndex(@NotNull PsiElement element)
     {
         final Module module = ModuleUtil.findModuleForPsiElement(element);
         if (module == null)
@@ -118,15 +147,36 @@ public abstract class GuardInspectionBase extends LocalInspectionTool
             return null;
         }
         final File moduleIoDir = VfsUtil.virtualToIoFile(moduleDir);
+        final File descriptorFile = new File(new File(moduleIoDir, PluginManager.META_INF), PluginManager.PLUGIN_XML);
+        if (!descriptorFile.isFile())
+        {
+            return null;
+        }
 
+        PluginDescriptorIndex index = module.getUserData(PLUGIN_DESCRIPTOR_KEY);
+        if (index == null || !index.getDescriptorFile().equals(descriptorFile) || !index.isUpToDate())
+        {
+            index = loadPluginDescriptor(descriptorFile);
+            module.putUserData(PLUGIN_DESCRIPTOR_KEY, index);
+        }
+        return index.isParsed() ? index : null;
+    }
+
+    @NotNull
+    private static PluginDescriptorIndex loadPluginDescriptor(@NotNull File descriptorFile)
+    {
+        // stamps are taken before reading, so that a change while parsing is seen by the next lookup
+        final Map<File, Long> stamps = new LinkedHashMap<File, Long>();
+        stamps.put(descriptorFile, descriptorFile.lastModified());
         try
         {
             // Extensions are private in IdeaPluginDescriptorImpl so we need to parse the xml
-            final URL url = new File(new File(moduleIoDir, PluginManager.META_INF), PluginManager.PLUGIN_XML).toURI().toURL();
+            final URL url = descriptorFile.toURI().toURL();
             Document document = JDOMUtil.loadDocument(url);
+            addIncludedStamps(document, url, stamps);
             document = JDOMXIncluder.resolve(document, url.toExternalForm());
             final Element rootElement = document.getRootElement();
-            return XmlSerializer.deserialize(rootElement, PluginBean.class);
+            return PluginDescriptorIndex.create(XmlSerializer.deserialize(rootElement, PluginBean.class), descriptorFile, stamps);
         }
         catch (JDOMException e)
         {
@@ -136,7 +186,73 @@ public abstract class GuardInspectionBase extends LocalInspectionTool
         {
             e.printStackTrace();
         }
-        return null;
+        return PluginDescriptorIndex.failed(descriptorFile, stamps);
+    }
+
+    /**
+     * Adds the time stamps of the local files included by <tt>document</tt> with <tt>xi:include</tt>,
+     * recursively. Files which can not be read are left to {@link JDOMXIncluder} to report.
+     */
+    private static void addIncludedStamps(@NotNull Document document, @NotNull URL base, @NotNull Map<File, Long> stamps)
+    {
+        final Iterator includes = document.getDescendants(new ElementFilter("include", Namespace.getNamespace(XINCLUDE_NAMESPACE)));
+        final List<URL> urls = new ArrayList<URL>();
+        while (includes.hasNext())
+        {
+            final String href = ((Element) includes.next()).getAttributeValue("href");
+            if (href != null)
+            {
+                try
+                {
+                    urls.add(new URL(base, href));
+                }
+                catch (MalformedURLException e)
+                {
+                    // reported when the include is resolved
+                }
+            }
+        }
+        for (URL url : urls)
+        {
+            if (!"file".equals(url.getProtocol()))
+            {
+                continue;
+            }
+            final File file;
+            try
+            {
+                file = new File(url.toURI());
+            }
+            catch (URISyntaxException e)
+            {
+                continue;
+            }
+            catch (IllegalArgumentException e)
+            {
+                // not a plain local file path, e.g. with a query
+                continue;
+            }
+            if (stamps.containsKey(file))
+            {
+                continue;
+            }
+            stamps.put(file, file.lastModified());
+            if (file.isFile())
+            {
+                try
+                {
+                    addIncludedStamps(JDOMUtil.loadDocument(url), url, stamps);
+                }
+                catch (JDOMException e)
+                {
+                    // reported when the include is resolved
+                }
+                catch (IOException e)
+                {
+                    // reported when the include is resolved
+                }
+            }
+        }
     }
 
     @Nullable
@@ -168,16 +284,35 @@ public abstract class GuardInspectionBase extends LocalInspectionTool
         return guardFacet != null ? guardFacet.getConfiguration() : null;
     }
 
+    @NotNull
+    private static SessionState getSessionState(@NotNull LocalInspectionToolSession session)
+    {
+        final SessionState state = session.getUserData(SESSION_STATE_KEY);
+        if (state != null)
+        {
+            return state;
+        }
+        return session.putUserDataIfAbsent(SESSION_STATE_KEY, new SessionState(session.getFile()));
+    }
+
+    /**
+     * @param session the inspection session
+     * @return the obfuscation configuration of the inspected file
+     */
     @Nullable
-    protected GuardFacetConfiguration getLocalConfiguration()
+    protected static GuardFacetConfiguration getLocalConfiguration(@NotNull LocalInspectionToolSession session)
     {
-        return localConfiguration;
+        return getSessionState(session).configuration;
     }
 
+    /**
+     * @param session the inspection session
+     * @return the plugin descriptor of the module of the inspected file
+     */
     @Nullable
-    protected PluginBean getLocalPluginDescriptor()
+    protected static PluginDescriptorIndex getLocalPluginDescriptor(@NotNull LocalInspectionToolSession session)
     {
-        return localPluginDescriptor;
+        return getSessionState(session).getPluginDescriptor();
     }
 
     public static void alertGuardMarkers(@NotNull PsiElement element)
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.inspection;
+
+import com.intellij.ide.plugins.PluginBean;
+import com.intellij.openapi.components.ComponentConfig;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The class names declared in a plugin descriptor, mapped to how they are declared. Built once per
+ * version of the descriptor file and the files it includes, see {@link GuardInspectionBase#getPluginDescriptorIndex}.
+ * A descriptor which could not be parsed is represented by an index which is not parsed, so that it
+ * is not parsed again until one of the files changes.
+ */
+public class PluginDescriptorIndex
+{
+    public enum Kind
+    {
+        APPLICATION_COMPONENT("an ApplicationComponent"),
+        PROJECT_COMPONENT("a ProjectComponent"),
+        MODULE_COMPONENT("a ModuleComponent"),
+        ACTION("an Action"),
+        EXTENSION("an Extension"),
+        EXTENSION_POINT("an ExtensionPoint");
+
+        private final String description;
+
+        Kind(@NotNull String description)
+        {
+            this.description = description;
+        }
+
+        @NotNull
+        public String getDescription()
+        {
+            return description;
+        }
+    }
+
+    private final File descriptorFile;
+    // time stamps of the descriptor and its included files when they were read, 0 for missing files
+    private final Map<File, Long> stamps;
+    private final boolean parsed;
+    private final Map<String, Set<Kind>> kinds = new HashMap<String, Set<Kind>>();
+
+    private PluginDescriptorIndex(@NotNull File descriptorFile, @NotNull Map<File, Long> stamps, boolean parsed)
+    {
+        this.descriptorFile = descriptorFile;
+        this.stamps = stamps;
+        this.parsed = parsed;
+    }
+
+    @NotNull
+    public static PluginDescriptorIndex create(@NotNull PluginBean pluginDescriptor, @NotNull File descriptorFile, @NotNull Map<File, Long> stamps)
+    {
+        final PluginDescriptorIndex index = new PluginDescriptorIndex(descriptorFile, stamps, true);
+        index.addComponents(Kind.APPLICATION_COMPONENT, pluginDescriptor.applicationComponents);
+        index.addComponents(Kind.PROJECT_COMPONENT, pluginDescriptor.projectComponents);
+        index.addComponents(Kind.MODULE_COMPONENT, pluginDescriptor.moduleComponents);
+        index.addElements(Kind.ACTION, pluginDescriptor.actions);
+        index.addElements(Kind.EXTENSION, pluginDescriptor.extensions);
+        index.addElements(Kind.EXTENSION_POINT, pluginDescriptor.extensionPoints);
+        return index;
+    }
+
+    /**
+     * @param descriptorFile the descriptor which could not be parsed
+     * @param stamps the time stamps of the descriptor and its included files
+     * @return an index without classes
+     */
+    @NotNull
+    public static PluginDescriptorIndex failed(@NotNull File descriptorFile, @NotNull Map<File, Long> stamps)
+    {
+        return new PluginDescriptorIndex(descriptorFile, stamps, false);
+    }
+
+    @NotNull
+    public File getDescriptorFile()
+    {
+        return descriptorFile;
+    }
+
+    /**
+     * @return <tt>false</tt> if the descriptor could not be parsed
+     */
+    public boolean isParsed()
+    {
+        return parsed;
+    }
+
+    /**
+     * @return <tt>true</tt> if neither the descriptor nor any of its included files changed since they were read
+     */
+    public boolean isUpToDate()
+    {
+        for (Map.Entry<File, Long> entry : stamps.entrySet())
+        {
+            if (entry.getKey().lastModified() != entry.getValue())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param className a class name as returned by {@link com.github.intelliguard.util.PsiUtils#getKeeperName}
+     * @return how the class is declared in the descriptor, empty if it is not
+     */
+    @NotNull
+    public Set<Kind> getKinds(@Nullable String className)
+    {
+        final Set<Kind> found = className != null ? kinds.get(className) : null;
+        return found != null ? found : Collections.<Kind>emptySet();
+    }
+
+    private void addElements(@NotNull Kind kind, @Nullable Element[] elements)
+    {
+        if (elements != null)
+        {
+            for (Element element : elements)
+            {
+                final List children = element.getChildren();
+                if (children != null)
+                {
+                    for (Object child : children)
+                    {
+                        if (child instanceof Element)
+                        {
+                            final Element childElement = (Element) child;
+                            add(kind, childElement.getAttributeValue("class"));
+                            add(kind, childElement.getAttributeValue("interface"));
+                            add(kind, childElement.getAttributeValue("implementation"));
+                            add(kind, childElement.getAttributeValue("serviceInterface"));
+                            add(kind, childElement.getAttributeValue("serviceImplementation"));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void addComponents(@NotNull Kind kind, @Nullable ComponentConfig[] components)
+    {
+        if (components != null)
+        {
+            for (ComponentConfig component : components)
+            {
+                add(kind, component.getInterfaceClass());
+                add(kind, component.getImplementationClass());
+                add(kind, component.getHeadlessImplementationClass());
+            }
+        }
+    }
+
+    private void add(@NotNull Kind kind, @Nullable String className)
+    {
+        if (className != null)
+        {
+            Set<Kind> classKinds = kinds.get(className);
+            if (classKinds == null)
+            {
+                classKinds = EnumSet.noneOf(Kind.class);
+                kinds.put(className, classKinds);
+            }
+            classKinds.add(kind);
+        }
+    }
+}
@@ -18,22 +18,18 @@ package com.github.intelliguard.inspection;
 
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.jdom.Element;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiReferenceExpression;
 import com.intellij.psi.PsiClass;
+import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemsHolder;
-import com.intellij.ide.plugins.PluginBean;
 import com.intellij.ide.plugins.PluginManager;
-import com.intellij.openapi.components.ComponentConfig;
 import com.github.intelliguard.util.PsiUtils;
 import com.github.intelliguard.util.InspectionUtils;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
-import com.github.intelliguard.model.Keeper;
 
-import java.util.*;
+import java.util.Set;
 import java.text.MessageFormat;
 
 /**
@@ -69,7 +65,7 @@ public class PluginProblemsInspection extends GuardInspectionBase
 
     @NotNull
     @Override
-    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly)
+    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly, @NotNull final LocalInspectionToolSession session)
     {
         return new JavaElementVisitor()
         {
@@ -81,71 +77,18 @@ public class PluginProblemsInspection extends GuardInspectionBase
             @Override
             public void visitClass(PsiClass aClass)
             {
-                final GuardFacetConfiguration facetConfiguration = getLocalConfiguration();
-                final PluginBean pluginDescriptor = getLocalPluginDescriptor();
+                final GuardFacetConfiguration facetConfiguration = getLocalConfiguration(session);
+                final PluginDescriptorIndex pluginDescriptor = getLocalPluginDescriptor(session);
                 if (facetConfiguration != null && pluginDescriptor != null)
                 {
-                    final Keeper[] obfuscationKeepers = facetConfiguration.findConfiguredGuardKeepers(aClass);
-                    if (obfuscationKeepers.length == 0)
+                    final String className = PsiUtils.getKeeperName(aClass);
+                    final Set<PluginDescriptorIndex.Kind> kinds = pluginDescriptor.getKinds(className);
+                    if (!kinds.isEmpty() && facetConfiguration.findConfiguredGuardKeepers(aClass).length == 0)
                     {
-                        final String className = PsiUtils.getKeeperName(aClass);
-
-                        final Set<String> applicationComponentClasses = new HashSet<String>();
-                        extractComponentClassNames(applicationComponentClasses, pluginDescriptor.applicationComponents);
-
-                        final Set<String> projectComponentClasses = new HashSet<String>();
-                        extractComponentClassNames(projectComponentClasses, pluginDescriptor.projectComponents);
-
-                        final Set<String> moduleComponentClasses = new HashSet<String>();
-                        extractComponentClassNames(moduleComponentClasses, pluginDescriptor.moduleComponents);
-
-                        final Set<String> actionClasses = new HashSet<String>();
-                        extractElementClassNames(actionClasses, pluginDescriptor.actions);
-
-                        final Set<String> extensionClasses = new HashSet<String>();
-                        extractElementClassNames(extensionClasses, pluginDescriptor.extensions);
-
-                        final Set<String> extensionPoints = new HashSet<String>();
-                        extractElementClassNames(extensionPoints, pluginDescriptor.extensionPoints);
-
-                        /*
-                        System.out.println("ApplicationComponentClasses = " + applicationComponentClasses);
-                        System.out.println("ProjectComponentClasses = " + projectComponentClasses);
-                        System.out.println("ModuleComponentClasses = " + moduleComponentClasses);
-                        System.out.println("ActionClasses = " + actionClasses);
-                        System.out.println("ExtensionClasses = " + extensionClasses);
-                        System.out.println("ExtensionPoints = " + extensionPoints);
-                        */
-
-                        if (applicationComponentClasses.contains(className))
-                        {
-                            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as an ApplicationComponent in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
-                        }
-                        if (projectComponentClasses.contains(className))
-                        {
-                            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as a ProjectComponent in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
-                        }
-                        if (moduleComponentClasses.contains(className))
-                        {
-                            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as a ModuleComponent in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
-                        }
-                        if (actionClasses.contains(className))
-                        {
-                            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as an Action in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
-                        }
-                        if (extensionClasses.contains(className))
-                        {
-                            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as an Extension in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
-                        }
-                        if (extensionPoints.contains(className))
+                        for (PluginDescriptorIndex.Kind kind : kinds)
                         {
                             holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass),
-                                    MessageFormat.format("Class {0} is listed as an ExtensionPoint in {1} and should not be obfuscated", className, PluginManager.PLUGIN_XML));
+                                    MessageFormat.format("Class {0} is listed as {1} in {2} and should not be obfuscated", className, kind.getDescription(), PluginManager.PLUGIN_XML));
                         }
                     }
                 }
@@ -154,56 +97,4 @@ public class PluginProblemsInspection extends GuardInspectionBase
             }
         };
     }
-
-    private void extractElementClassNames(@NotNull Collection<String> classNames, @Nullable Element[] elements)
-    {
-        if (elements != null)
-        {
-            for (Element element : elements)
-            {
-                final List children = element.getChildren();
-                if (children != null)
-                {
-                    for (Object child : children)
-                    {
-                        if (child instanceof Element)
-                        {
-                            final Element childElement = (Element) child;
-                            addIfNotNullAttribute(classNames, childElement, "class");
-                            addIfNotNullAttribute(classNames, childElement, "interface");
-                            addIfNotNullAttribute(classNames, childElement, "implementation");
-                            addIfNotNullAttribute(classNames, childElement, "serviceInterface");
-                            addIfNotNullAttribute(classNames, childElement, "serviceImplementation");
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private void addIfNotNullAttribute(@NotNull Collection<String> classNames, @NotNull Element element, String attributeName)
-    {
-        addIfNotNull(classNames, element.getAttributeValue(attributeName));
-    }
-
-    private void extractComponentClassNames(@NotNull Collection<String> classes, @Nullable ComponentConfig[] components)
-    {
-        if (components != null)
-        {
-            for (ComponentConfig component : components)
-            {
-                addIfNotNull(classes, component.getInterfaceClass());
-                addIfNotNull(classes, component.getImplementationClass());
-                addIfNotNull(classes, component.getHeadlessImplementationClass());
-            }
-        }
-    }
-
-    private void addIfNotNull(@NotNull Collection<String> names, @Nullable String name)
-    {
-        if (name != null)
-        {
-            names.add(name);
-        }
-    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.inspection;
+
+import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.util.PsiUtils;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.ClassInheritorsSearch;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The classes of a module which extend or implement a type that is usually instantiated by
+ * reflection, e.g. servlets and applets. The inheritors of all base types are found once with the
+ * class hierarchy index and cached until the code structure or the facet configuration changes, so
+ * checking a class is a single lookup.
+ */
+public class ReflectionBaseTypes
+{
+    private static final Key<CachedValue<ReflectionBaseTypes>> CACHE_KEY = Key.create("IntelliGuard.ReflectionBaseTypes");
+
+    // base type name to description
+    private static final Map<String, String> DEFAULT_BASE_TYPES = new LinkedHashMap<String, String>();
+    static
+    {
+        DEFAULT_BASE_TYPES.put("javax.servlet.http.HttpServlet", "HTTP Servlet");
+        DEFAULT_BASE_TYPES.put("java.applet.Applet", "Applet");
+        DEFAULT_BASE_TYPES.put("javax.microedition.midlet.MIDlet", "MIDlet");
+        DEFAULT_BASE_TYPES.put("android.app.Activity", "Android Activity");
+        DEFAULT_BASE_TYPES.put("android.app.Service", "Android Service");
+        DEFAULT_BASE_TYPES.put("android.content.BroadcastReceiver", "Android Broadcast Receiver");
+        DEFAULT_BASE_TYPES.put("android.content.ContentProvider", "Android Content Provider");
+        DEFAULT_BASE_TYPES.put("org.apache.struts.action.Action", "Struts Action");
+        DEFAULT_BASE_TYPES.put("javacard.framework.Applet", "Java Card");
+        DEFAULT_BASE_TYPES.put("javax.tv.xlet.Xlet", "Xlet");
+        DEFAULT_BASE_TYPES.put("java.sql.Driver", "SQL Driver");
+        DEFAULT_BASE_TYPES.put("com.opensymphony.xwork2.Action", "Struts 2 Action");
+    }
+
+    private final GuardFacetConfiguration configuration;
+    // inheritor class name to the descriptions of its base types
+    private final Map<String, List<String>> inheritors;
+
+    private ReflectionBaseTypes(@NotNull GuardFacetConfiguration configuration, @NotNull Map<String, List<String>> inheritors)
+    {
+        this.configuration = configuration;
+        this.inheritors = inheritors;
+    }
+
+    /**
+     * Must be called in a read action, with indexes available.
+     * @param module the module
+     * @param configuration the obfuscation configuration of the module
+     * @return the reflection inheritors of the module
+     */
+    @NotNull
+    public static ReflectionBaseTypes getInstance(@NotNull final Module module, @NotNull final GuardFacetConfiguration configuration)
+    {
+        CachedValue<ReflectionBaseTypes> cachedValue = module.getUserData(CACHE_KEY);
+        if (cachedValue != null)
+        {
+            final ReflectionBaseTypes baseTypes = cachedValue.getValue();
+            if (baseTypes.configuration == configuration)
+            {
+                return baseTypes;
+            }
+        }
+        cachedValue = CachedValuesManager.getManager(module.getProject()).createCachedValue(new CachedValueProvider<ReflectionBaseTypes>()
+        {
+            public Result<ReflectionBaseTypes> compute()
+            {
+                return Result.create(new ReflectionBaseTypes(configuration, findInheritors(module, getBaseTypes(configuration))),
+                        PsiModificationTracker.OUT_OF_CODE_BLOCK_MODIFICATION_COUNT, configuration.getModificationTracker());
+            }
+        }, false);
+        // a concurrent duplicate only costs one extra search
+        module.putUserData(CACHE_KEY, cachedValue);
+        return cachedValue.getValue();
+    }
+
+    /**
+     * @param aClass a class of the module
+     * @return the descriptions of the reflection base types the class extends or implements, empty if none
+     */
+    @NotNull
+    public List<String> getDescriptions(@NotNull PsiClass aClass)
+    {
+        if (inheritors.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        final List<String> descriptions = inheritors.get(PsiUtils.getKeeperName(aClass));
+        return descriptions != null ? descriptions : Collections.<String>emptyList();
+    }
+
+    /**
+     * @param configuration the facet configuration
+     * @return the built in base types followed by those of the facet, mapped to their descriptions
+     */
+    @NotNull
+    static Map<String, String> getBaseTypes(@NotNull GuardFacetConfiguration configuration)
+    {
+        final Map<String, String> baseTypes = new LinkedHashMap<String, String>(DEFAULT_BASE_TYPES);
+        for (String name : configuration.parseReflectionBaseTypes())
+        {
+            if (!baseTypes.containsKey(name))
+            {
+                baseTypes.put(name, name.substring(name.lastIndexOf('.') + 1));
+            }
+        }
+        return baseTypes;
+    }
+
+    @NotNull
+    private static Map<String, List<String>> findInheritors(@NotNull Module module, @NotNull Map<String, String> baseTypes)
+    {
+        final Map<String, List<String>> inheritors = new HashMap<String, List<String>>();
+        final JavaPsiFacade facade = JavaPsiFacade.getInstance(module.getProject());
+        final GlobalSearchScope resolveScope = GlobalSearchScope.moduleWithDependenciesAndLibrariesScope(module);
+        final GlobalSearchScope moduleScope = GlobalSearchScope.moduleScope(module);
+        for (Map.Entry<String, String> entry : baseTypes.entrySet())
+        {
+            // base types which are not on the class path can not have inheritors
+            final PsiClass baseClass = facade.findClass(entry.getKey(), resolveScope);
+            if (baseClass == null)
+            {
+                continue;
+            }
+            for (PsiClass inheritor : ClassInheritorsSearch.search(baseClass, moduleScope, true).findAll())
+            {
+                final String name = PsiUtils.getKeeperName(inheritor);
+                if (name == null)
+                {
+                    continue;
+                }
+                List<String> descriptions = inheritors.get(name);
+                if (descriptions == null)
+                {
+                    descriptions = new ArrayList<String>(1);
+                    inheritors.put(name, descriptions);
+                }
+                descriptions.add(entry.getValue());
+            }
+        }
+        return inheritors;
+    }
+}
@@ -19,7 +19,10 @@ package com.github.intelliguard.inspection;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.model.Keeper;
 import com.github.intelliguard.util.InspectionUtils;
+import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
 import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElementVisitor;
@@ -27,10 +30,6 @@ import com.intellij.psi.PsiReferenceExpression;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
@@ -41,25 +40,7 @@ public class ReflectionProblemsInspection extends GuardInspectionBase
 {
     private static final String STATIC_DESCRIPTION = "This inspection detects classes which " +
             "under usual conditions need to have their class names kept for reflection purposes, e.g. servlets, " +
-            "applets, etcetera.";
-
-    private static final Map<String, String> EXTENDS = new HashMap<String, String>();
-    private static final Map<String, String> IMPLEMENTS = new HashMap<String, String>();
-    static
-    {
-        EXTENDS.put("javax.servlet.http.HttpServlet", "HTTP Servlet");
-        EXTENDS.put("java.applet.Applet", "Applet");
-        EXTENDS.put("javax.microedition.midlet.MIDlet", "MIDlet");
-        EXTENDS.put("android.app.Activity", "Android Activity");
-        EXTENDS.put("android.app.Service", "Android Service");
-        EXTENDS.put("android.content.BroadcastReceiver", "Android Broadcast Receiver");
-        EXTENDS.put("android.content.ContentProvider", "Android Content Provider");
-        EXTENDS.put("org.apache.struts.action.Action", "Struts Action");
-        IMPLEMENTS.put("javacard.framework.Applet", "Java Card");
-        IMPLEMENTS.put("javax.tv.xlet.Xlet", "Xlet");
-        IMPLEMENTS.put("java.sql.Driver", "SQL Driver");
-        IMPLEMENTS.put("com.opensymphony.xwork2.Action", "Struts 2 Action");
-    }
+            "applets, etcetera. Further base classes and interfaces can be added in the obfuscation facet settings.";
 
     @Nls
     @NotNull
@@ -82,7 +63,7 @@ public class ReflectionProblemsInspection extends GuardInspectionBase
 
     @NotNull
     @Override
-    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly)
+    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly, @NotNull final LocalInspectionToolSession session)
     {
         return new JavaElementVisitor()
         {
@@ -94,7 +75,7 @@ public class ReflectionProblemsInspection extends GuardInspectionBase
             @Override
             public void visitClass(PsiClass aClass)
             {
-                final GuardFacetConfiguration facetConfiguration = getLocalConfiguration();
+                final GuardFacetConfiguration facetConfiguration = getLocalConfiguration(session);
                 if (facetConfiguration != null)
                 {
                     if (aClass != null && !aClass.isInterface() && !aClass.hasModifierProperty("abstract"))
@@ -102,7 +83,7 @@ public class ReflectionProblemsInspection extends GuardInspectionBase
                         final Keeper[] obfuscationKeepers = facetConfiguration.findConfiguredGuardKeepers(aClass);
                         if (obfuscationKeepers.length == 0)
                         {
-                            checkClass(holder, aClass);
+                            checkClass(holder, facetConfiguration, aClass);
                         }
                     }
                 }
@@ -112,28 +93,16 @@ public class ReflectionProblemsInspection extends GuardInspectionBase
         };
     }
 
-    private void checkClass(@NotNull final ProblemsHolder holder, @NotNull PsiClass aClass)
+    private void checkClass(@NotNull final ProblemsHolder holder, @NotNull GuardFacetConfiguration configuration, @NotNull PsiClass aClass)
     {
-        final Collection<PsiClass> supers = InspectionUtils.resolveAllSuperClasses(aClass);
-        for (PsiClass superClass : supers)
+        final Module module = ModuleUtil.findModuleForPsiElement(aClass);
+        if (module == null)
         {
-            final String description = EXTENDS.get(superClass.getQualifiedName());
-            if (description != null)
-            {
-                holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass), description + " name should probably not be obfuscated");
-            }
+            return;
         }
-
-        final Collection<PsiClass> interfaces = InspectionUtils.resolveInterfaces(aClass, supers);
-        for (PsiClass iface : interfaces)
+        for (String description : ReflectionBaseTypes.getInstance(module, configuration).getDescriptions(aClass))
         {
-            final String description = IMPLEMENTS.get(iface.getQualifiedName());
-            if (description != null)
-            {
-                holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass), description + " name should probably not be obfuscated");
-            }
+            holder.registerProblem(InspectionUtils.getNameIdentifierElement(aClass), description + " name should probably not be obfuscated");
         }
-
     }
-
 }
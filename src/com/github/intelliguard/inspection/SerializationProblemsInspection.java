@@ -20,6 +20,7 @@ import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.model.Keeper;
 import com.github.intelliguard.util.InspectionUtils;
 import com.github.intelliguard.util.PsiUtils;
+import com.intellij.codeInspection.LocalInspectionToolSession;
 import com.intellij.codeInspection.ProblemsHolder;
 import com.intellij.psi.JavaElementVisitor;
 import com.intellij.psi.PsiClass;
@@ -71,7 +72,7 @@ public class SerializationProblemsInspection extends GuardInspectionBase
 
     @NotNull
     @Override
-    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly)
+    public PsiElementVisitor buildVisitor(@NotNull final ProblemsHolder holder, final boolean isOnTheFly, @NotNull final LocalInspectionToolSession session)
     {
         return new JavaElementVisitor()
         {
@@ -88,7 +89,7 @@ public class SerializationProblemsInspection extends GuardInspectionBase
             @Override
             public void visitField(PsiField field)
             {
-                GuardFacetConfiguration configuration = getLocalConfiguration();
+                GuardFacetConfiguration configuration = getLocalConfiguration(session);
                 if (configuration != null)
                 {
                     if (implementsSerializable(field.getContainingClass()))
@@ -112,7 +113,7 @@ public class SerializationProblemsInspection extends GuardInspectionBase
             @Override
             public void visitMethod(PsiMethod method)
             {
-                GuardFacetConfiguration configuration = getLocalConfiguration();
+                GuardFacetConfiguration configuration = getLocalConfiguration(session);
                 if (configuration != null)
                 {
                     if (implementsSerializable(method.getContainingClass()))
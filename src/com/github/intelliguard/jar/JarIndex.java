@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sidecar index of a jar written by {@link ParallelJarWriter}. For every entry created from a file
+ * it records the size, modification time and content hash of the source file, so that the next
+ * build can tell which entries are unchanged and copy them from the previous jar as they are.
+ */
+public class JarIndex
+{
+    private static final String HEADER = "# IntelliGuard jar index 1";
+    private static final String SUFFIX = ".index";
+
+    private final Map<String, Record> records = new HashMap<String, Record>();
+
+    public static class Record
+    {
+        private final long size;
+        private final long modified;
+        private final String hash;
+
+        public Record(long size, long modified, @NotNull String hash)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getModified()
+        {
+            return modified;
+        }
+
+        @NotNull
+        public String getHash()
+        {
+            return hash;
+        }
+    }
+
+    @NotNull
+    public static File getIndexFile(@NotNull File jarFile)
+    {
+        return new File(jarFile.getParentFile(), jarFile.getName() + SUFFIX);
+    }
+
+    @Nullable
+    public Record get(@NotNull String entryName)
+    {
+        return records.get(entryName);
+    }
+
+    public void put(@NotNull String entryName, @NotNull Record record)
+    {
+        records.put(entryName, record);
+    }
+
+    public int size()
+    {
+        return records.size();
+    }
+
+    /**
+     * Loads an index file. A missing or unreadable index results in an empty index.
+     * @param indexFile the index file
+     * @return the index, never <tt>null</tt>
+     */
+    @NotNull
+    public static JarIndex load(@NotNull File indexFile)
+    {
+        final JarIndex index = new JarIndex();
+        if (!indexFile.isFile())
+        {
+            return index;
+        }
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            if (!HEADER.equals(reader.readLine()))
+            {
+                return index;
+            }
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                // name<TAB>size<TAB>modified<TAB>hash - split from the end since only the name is free text
+                final int hashTab = line.lastIndexOf('\t');
+                final int modifiedTab = hashTab > 0 ? line.lastIndexOf('\t', hashTab - 1) : -1;
+                final int sizeTab = modifiedTab > 0 ? line.lastIndexOf('\t', modifiedTab - 1) : -1;
+                if (sizeTab <= 0)
+                {
+                    continue;
+                }
+                final long size = Long.parseLong(line.substring(sizeTab + 1, modifiedTab));
+                final long modified = Long.parseLong(line.substring(modifiedTab + 1, hashTab));
+                index.put(line.substring(0, sizeTab), new Record(size, modified, line.substring(hashTab + 1)));
+            }
+        }
+        catch (IOException e)
+        {
+            index.records.clear();
+        }
+        catch (NumberFormatException e)
+        {
+            index.records.clear();
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try
+                {
+                    reader.close();
+                }
+                catch (IOException e)
+                {
+                    // ignore
+                }
+            }
+        }
+        return index;
+    }
+
+    public void save(@NotNull File indexFile) throws IOException
+    {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile), "UTF-8"));
+        try
+        {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Record> entry : records.entrySet())
+            {
+                final Record record = entry.getValue();
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(String.valueOf(record.size));
+                writer.write('\t');
+                writer.write(String.valueOf(record.modified));
+                writer.write('\t');
+                writer.write(record.hash);
+                writer.write('\n');
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
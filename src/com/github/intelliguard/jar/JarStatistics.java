@@ -0,0 +1,83 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import java.text.MessageFormat;
+
+/**
+ * Entry count, sizes and elapsed time of a written jar.
+ */
+public class JarStatistics
+{
+    private static final double MEGABYTE = 1024 * 1024;
+
+    private final int entries;
+    private final int reusedEntries;
+    private final long size;
+    private final long compressedSize;
+    private final long millis;
+
+    public JarStatistics(int entries, int reusedEntries, long size, long compressedSize, long millis)
+    {
+        this.entries = entries;
+        this.reusedEntries = reusedEntries;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.millis = millis;
+    }
+
+    public int getEntries()
+    {
+        return entries;
+    }
+
+    public int getReusedEntries()
+    {
+        return reusedEntries;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    public long getMillis()
+    {
+        return millis;
+    }
+
+    public double getEntriesPerSecond()
+    {
+        return entries * 1000d / Math.max(1, millis);
+    }
+
+    public double getMegabytesPerSecond()
+    {
+        return size / MEGABYTE * 1000d / Math.max(1, millis);
+    }
+
+    public String toText()
+    {
+        return MessageFormat.format("Wrote {0} entries ({1,number,0.0} MB, {2,number,0.0} MB compressed, {3} unchanged entries reused) in {4} ms: {5,number,0} entries/s, {6,number,0.0} MB/s",
+                entries, size / MEGABYTE, compressedSize / MEGABYTE, reusedEntries, millis, getEntriesPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Serializes a {@link Manifest} with a stable layout: <tt>Manifest-Version</tt> first, the remaining
+ * attributes and the per-entry sections sorted by name. {@link Manifest#write} follows the iteration
+ * order of a hash map instead, which may differ between runs and JVMs.
+ */
+public class ManifestWriter
+{
+    private static final int MAX_LINE_LENGTH = 72;
+    private static final byte[] NEWLINE = {'\r', '\n'};
+
+    @NotNull
+    public static byte[] toBytes(@NotNull Manifest manifest) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final Attributes mainAttributes = manifest.getMainAttributes();
+        final String version = mainAttributes.getValue(Attributes.Name.MANIFEST_VERSION);
+        writeAttribute(out, Attributes.Name.MANIFEST_VERSION.toString(), version != null ? version : "1.0");
+        writeAttributes(out, mainAttributes);
+        out.write(NEWLINE);
+
+        final List<String> names = new ArrayList<String>(manifest.getEntries().keySet());
+        Collections.sort(names);
+        for (String name : names)
+        {
+            writeAttribute(out, "Name", name);
+            writeAttributes(out, manifest.getEntries().get(name));
+            out.write(NEWLINE);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeAttributes(@NotNull ByteArrayOutputStream out, @NotNull Attributes attributes) throws IOException
+    {
+        final List<String> names = new ArrayList<String>();
+        for (Map.Entry<Object, Object> entry : attributes.entrySet())
+        {
+            final String name = entry.getKey().toString();
+            if (!Attributes.Name.MANIFEST_VERSION.toString().equalsIgnoreCase(name))
+            {
+                names.add(name);
+            }
+        }
+        Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+        for (String name : names)
+        {
+            writeAttribute(out, name, attributes.getValue(name));
+        }
+    }
+
+    /**
+     * Writes <tt>name: value</tt>, wrapped into lines of at most 72 bytes where continuation lines
+     * start with a single space. Multi-byte UTF-8 characters are never split.
+     */
+    private static void writeAttribute(@NotNull ByteArrayOutputStream out, @NotNull String name, @NotNull String value) throws IOException
+    {
+        final byte[] line = (name + ": " + value).getBytes("UTF-8");
+        int pos = 0;
+        int limit = MAX_LINE_LENGTH;
+        while (line.length - pos > limit)
+        {
+            int end = pos + limit;
+            while ((line[end] & 0xC0) == 0x80)
+            {
+                end--;
+            }
+            out.write(line, pos, end - pos);
+            out.write(NEWLINE);
+            out.write(' ');
+            pos = end;
+            limit = MAX_LINE_LENGTH - 1;
+        }
+        out.write(line, pos, line.length - pos);
+        out.write(NEWLINE);
+    }
+}
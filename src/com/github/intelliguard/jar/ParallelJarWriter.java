@@ -0,0 +1,501 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import com.github.intelliguard.runner.RunProgress;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a jar file by compressing its entries concurrently in a pool of worker threads, while
+ * the calling thread writes the finished entries to disk in the order they were added. The pool is
+ * shared by all writers and bounded by the number of processors, so jars built in parallel do not
+ * multiply the compression threads.
+ */
+public class ParallelJarWriter
+{
+    // how many entries per worker thread may be compressed ahead of the writer
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory()
+    {
+        public Thread newThread(Runnable r)
+        {
+            final Thread thread = new Thread(r, "IntelliGuard jar writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    private final RunProgress runProgress;
+    private final int threads;
+    private final List<Source> sources = new ArrayList<Source>();
+    private final Set<String> names = new HashSet<String>();
+    private final JarIndex index = new JarIndex();
+    private boolean compress = true;
+    private boolean reproducible;
+    @Nullable
+    private RawZipReader previousJar;
+    @Nullable
+    private JarIndex previousIndex;
+
+    public ParallelJarWriter(@NotNull RunProgress runProgress)
+    {
+        this(runProgress, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param runProgress progress of the run
+     * @param threads how many of the shared worker threads this writer may keep busy
+     */
+    public ParallelJarWriter(@NotNull RunProgress runProgress, int threads)
+    {
+        this.runProgress = runProgress;
+        this.threads = Math.max(1, threads);
+    }
+
+    @NotNull
+    private static ExecutorService createExecutor()
+    {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(processors, processors, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        // no idle threads are kept between builds
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public void addContent(@NotNull String entryName, @NotNull byte[] content, long time)
+    {
+        if (checkUnique(entryName))
+        {
+            sources.add(new ContentSource(entryName, content, time));
+        }
+    }
+
+    public void addFile(@NotNull String entryName, @NotNull File file)
+    {
+        if (checkUnique(entryName))
+        {
+            sources.add(new FileSource(entryName, file));
+        }
+    }
+
+    /**
+     * Merges the entries of an archive, copying their compressed data as it is. The manifest and
+     * signature files of the archive are skipped, since they do not apply to the merged jar. Entries
+     * already added take precedence over entries of the archive with the same name.
+     * The archive must be kept open until {@link #write(File)} has returned.
+     * @param archive the archive to merge
+     * @return the number of entries merged
+     */
+    public int addArchive(@NotNull RawZipReader archive)
+    {
+        int merged = 0;
+        for (ZipEntryData entry : archive.getEntries())
+        {
+            final String entryName = entry.getName();
+            if (isManifestOrSignature(entryName))
+            {
+                continue;
+            }
+            if (!names.add(entryName))
+            {
+                if (!entryName.endsWith("/"))
+                {
+                    runProgress.markVerbose("Skipping duplicate entry " + entryName + " in " + archive.getFile().getName());
+                }
+                continue;
+            }
+            sources.add(new RawSource(entry));
+            merged++;
+        }
+        return merged;
+    }
+
+    private static boolean isManifestOrSignature(@NotNull String entryName)
+    {
+        final String name = entryName.toUpperCase(Locale.ENGLISH);
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1)
+        {
+            return false;
+        }
+        return name.equals(JarFile.MANIFEST_NAME) || name.equals("META-INF/INDEX.LIST")
+                || name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC")
+                || name.startsWith("META-INF/SIG-");
+    }
+
+    /**
+     * @param compress <tt>true</tt> to deflate entries, <tt>false</tt> to write them STORED
+     */
+    public void setCompress(boolean compress)
+    {
+        this.compress = compress;
+    }
+
+    /**
+     * In reproducible mode entries are written sorted by name, with the manifest first, and all
+     * carry the same timestamp, so that identical input yields a byte identical jar.
+     * @param reproducible <tt>true</tt> to enable reproducible mode
+     */
+    public void setReproducible(boolean reproducible)
+    {
+        this.reproducible = reproducible;
+    }
+
+    /**
+     * Enables incremental mode: entries whose source file is unchanged according to the index of the
+     * previous build are copied from the previous jar as raw compressed bytes instead of being
+     * compressed again.
+     * @param previousJar the jar written by the previous build
+     * @param previousIndex the index written by the previous build
+     */
+    public void setPrevious(@NotNull RawZipReader previousJar, @NotNull JarIndex previousIndex)
+    {
+        this.previousJar = previousJar;
+        this.previousIndex = previousIndex;
+    }
+
+    /**
+     * @return the index of the entries written from files, complete after {@link #write(File)}
+     */
+    @NotNull
+    public JarIndex getIndex()
+    {
+        return index;
+    }
+
+    private boolean checkUnique(@NotNull String entryName)
+    {
+        if (!names.add(entryName))
+        {
+            runProgress.markError("duplicate entry: " + entryName);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compresses and writes every added entry. Progress is reported as the fraction of the total
+     * input bytes written, and cancellation is checked before every entry.
+     * @param outFile the jar file to create
+     * @return statistics for the written jar
+     * @throws IOException if the jar file can not be written
+     * @throws com.intellij.openapi.progress.ProcessCanceledException if canceled, leaving a partial jar behind
+     */
+    @NotNull
+    public JarStatistics write(@NotNull File outFile) throws IOException
+    {
+        final long start = System.currentTimeMillis();
+        if (reproducible)
+        {
+            Collections.sort(sources, SOURCE_ORDER);
+        }
+        final long[] weights = new long[sources.size()];
+        long totalWeight = 0;
+        for (int i = 0; i < weights.length; i++)
+        {
+            weights[i] = sources.get(i).getWeight();
+            totalWeight += weights[i];
+        }
+        long doneWeight = 0;
+        final RawZipWriter writer = new RawZipWriter(outFile);
+        long size = 0;
+        int reused = 0;
+        final LinkedList<Future<ZipEntryData>> pending = new LinkedList<Future<ZipEntryData>>();
+        try
+        {
+            final int window = threads * WINDOW_PER_THREAD;
+            int submitted = 0;
+            for (int i = 0; i < sources.size(); i++)
+            {
+                runProgress.checkCanceled();
+                while (submitted < sources.size() && submitted - i < window)
+                {
+                    pending.add(EXECUTOR.submit(sources.get(submitted++)));
+                }
+                final ZipEntryData entry;
+                try
+                {
+                    entry = pending.removeFirst().get();
+                }
+                catch (ExecutionException e)
+                {
+                    final Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    runProgress.markError(cause.getMessage());
+                    doneWeight += weights[i];
+                    continue;
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing " + outFile.getName());
+                }
+                final Source source = sources.get(i);
+                doneWeight += weights[i];
+                runProgress.setFraction((double) doneWeight / totalWeight);
+                if (source instanceof FileSource)
+                {
+                    final FileSource fileSource = (FileSource) source;
+                    index.put(fileSource.name, fileSource.record);
+                    if (fileSource.reused)
+                    {
+                        reused++;
+                    }
+                }
+                runProgress.markVerbose("Adding " + entry.getName());
+                writer.writeEntry(entry);
+                size += entry.getSize();
+            }
+        }
+        finally
+        {
+            for (Future<ZipEntryData> future : pending)
+            {
+                future.cancel(true);
+            }
+            writer.close();
+        }
+        return new JarStatistics(writer.getEntryCount(), reused, size, outFile.length(), System.currentTimeMillis() - start);
+    }
+
+    private long getDosTime(long time)
+    {
+        return reproducible ? ZipEntryData.MIN_DOS_TIME : ZipEntryData.toDosTime(time);
+    }
+
+    @NotNull
+    private ZipEntryData pack(@NotNull String name, @NotNull byte[] content, long time)
+    {
+        final long dosTime = getDosTime(time);
+        return compress ? deflate(name, content, dosTime) : store(name, content, dosTime);
+    }
+
+    @NotNull
+    static ZipEntryData store(@NotNull String name, @NotNull byte[] content, long dosTime)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return new ZipEntryData(name, ZipEntryData.STORED, dosTime, crc.getValue(), content.length, content.length, content);
+    }
+
+    @NotNull
+    static ZipEntryData deflate(@NotNull String name, @NotNull byte[] content, long dosTime)
+    {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try
+        {
+            deflater.setInput(content);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, content.length / 2)];
+            int length = 0;
+            while (!deflater.finished())
+            {
+                if (length == buffer.length)
+                {
+                    final byte[] grown = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, grown, 0, length);
+                    buffer = grown;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return new ZipEntryData(name, ZipEntryData.DEFLATED, dosTime, crc.getValue(), length, content.length, buffer);
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private static final Comparator<Source> SOURCE_ORDER = new Comparator<Source>()
+    {
+        public int compare(Source o1, Source o2)
+        {
+            final boolean manifest1 = JarFile.MANIFEST_NAME.equals(o1.name);
+            final boolean manifest2 = JarFile.MANIFEST_NAME.equals(o2.name);
+            if (manifest1 != manifest2)
+            {
+                return manifest1 ? -1 : 1;
+            }
+            return o1.name.compareTo(o2.name);
+        }
+    };
+
+    private static abstract class Source implements Callable<ZipEntryData>
+    {
+        protected final String name;
+
+        protected Source(@NotNull String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * @return the share of the work this entry represents, at least 1 so that empty entries count
+         */
+        protected abstract long getWeight();
+    }
+
+    private class ContentSource extends Source
+    {
+        private final byte[] content;
+        private final long time;
+
+        private ContentSource(@NotNull String name, @NotNull byte[] content, long time)
+        {
+            super(name);
+            this.content = content;
+            this.time = time;
+        }
+
+        protected long getWeight()
+        {
+            return Math.max(1, content.length);
+        }
+
+        public ZipEntryData call()
+        {
+            return pack(name, content, time);
+        }
+    }
+
+    @NotNull
+    private static String hash(@NotNull byte[] content)
+    {
+        try
+        {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+            final StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class RawSource extends Source
+    {
+        private final ZipEntryData entry;
+
+        private RawSource(@NotNull ZipEntryData entry)
+        {
+            super(entry.getName());
+            this.entry = entry;
+        }
+
+        protected long getWeight()
+        {
+            // copied without inflating, so the cost is the compressed size
+            return Math.max(1, entry.getCompressedSize());
+        }
+
+        public ZipEntryData call()
+        {
+            return reproducible ? entry.withDosTime(ZipEntryData.MIN_DOS_TIME) : entry;
+        }
+    }
+
+    private class FileSource extends Source
+    {
+        private final File file;
+        // set by the worker thread, read by the writer thread once the future has completed
+        private JarIndex.Record record;
+        private boolean reused;
+
+        private FileSource(@NotNull String name, @NotNull File file)
+        {
+            super(name);
+            this.file = file;
+        }
+
+        protected long getWeight()
+        {
+            return Math.max(1, file.length());
+        }
+
+        public ZipEntryData call() throws IOException
+        {
+            final long length = file.length();
+            final long modified = file.lastModified();
+            final JarIndex.Record previousRecord = previousIndex == null ? null : previousIndex.get(name);
+            ZipEntryData previousEntry = previousJar == null ? null : previousJar.getEntry(name);
+            if (previousEntry != null && (previousEntry.getMethod() != (compress ? ZipEntryData.DEFLATED : ZipEntryData.STORED)
+                    || reproducible && previousEntry.getDosTime() != ZipEntryData.MIN_DOS_TIME))
+            {
+                // compression or reproducible setting changed since the previous build
+                previousEntry = null;
+            }
+
+            if (previousRecord != null && previousEntry != null
+                    && previousRecord.getSize() == length && previousRecord.getModified() == modified)
+            {
+                record = previousRecord;
+                reused = true;
+                return previousEntry;
+            }
+
+            final byte[] content = FileUtil.loadFileBytes(file);
+            record = new JarIndex.Record(content.length, modified, hash(content));
+
+            if (previousRecord != null && previousEntry != null
+                    && previousEntry.getSize() == content.length && previousRecord.getHash().equals(record.getHash()))
+            {
+                // touched but not modified
+                reused = true;
+                return previousEntry;
+            }
+            return pack(name, content, modified);
+        }
+    }
+}
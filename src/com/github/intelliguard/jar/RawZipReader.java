@@ -0,0 +1,200 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the central directory of an existing zip archive and gives access to the raw (still
+ * compressed) data of its entries, so that they can be copied into another archive by
+ * {@link RawZipWriter} without being inflated and deflated again.
+ */
+public class RawZipReader
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final Map<String, ZipEntryData> entries = new LinkedHashMap<String, ZipEntryData>();
+    private final byte[] buffer = new byte[64 * 1024];
+
+    public RawZipReader(@NotNull File file) throws IOException
+    {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "r");
+        try
+        {
+            readCentralDirectory();
+        }
+        catch (IOException e)
+        {
+            raf.close();
+            throw e;
+        }
+    }
+
+    @NotNull
+    public File getFile()
+    {
+        return file;
+    }
+
+    @Nullable
+    public ZipEntryData getEntry(@NotNull String name)
+    {
+        return entries.get(name);
+    }
+
+    @NotNull
+    public Collection<ZipEntryData> getEntries()
+    {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public void close() throws IOException
+    {
+        raf.close();
+    }
+
+    private void readCentralDirectory() throws IOException
+    {
+        final long length = raf.length();
+        final int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        final byte[] tail = new byte[tailLength];
+        raf.seek(length - tailLength);
+        raf.readFully(tail);
+
+        int eocd = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--)
+        {
+            if (getInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+            {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1)
+        {
+            throw new IOException("Not a zip archive: " + file.getPath());
+        }
+
+        final int count = getShort(tail, eocd + 10);
+        final long centralSize = getInt(tail, eocd + 12) & 0xFFFFFFFFL;
+        final long centralOffset = getInt(tail, eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || centralOffset == 0xFFFFFFFFL || centralOffset + centralSize > length)
+        {
+            throw new IOException("Unsupported zip archive (zip64 or corrupt): " + file.getPath());
+        }
+
+        final byte[] central = new byte[(int) centralSize];
+        raf.seek(centralOffset);
+        raf.readFully(central);
+
+        int pos = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (pos + CENTRAL_HEADER_LENGTH > central.length || getInt(central, pos) != CENTRAL_HEADER_SIGNATURE)
+            {
+                throw new IOException("Corrupt central directory in " + file.getPath());
+            }
+            final int flags = getShort(central, pos + 8);
+            final int method = getShort(central, pos + 10);
+            final long dosTime = getInt(central, pos + 12) & 0xFFFFFFFFL;
+            final long crc = getInt(central, pos + 16) & 0xFFFFFFFFL;
+            final long compressedSize = getInt(central, pos + 20) & 0xFFFFFFFFL;
+            final long size = getInt(central, pos + 24) & 0xFFFFFFFFL;
+            final int nameLength = getShort(central, pos + 28);
+            final int extraLength = getShort(central, pos + 30);
+            final int commentLength = getShort(central, pos + 32);
+            final long localOffset = getInt(central, pos + 42) & 0xFFFFFFFFL;
+
+            final byte[] nameBytes = new byte[nameLength];
+            System.arraycopy(central, pos + CENTRAL_HEADER_LENGTH, nameBytes, 0, nameLength);
+            pos += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+
+            if ((flags & FLAG_ENCRYPTED) != 0 || (method != ZipEntryData.STORED && method != ZipEntryData.DEFLATED))
+            {
+                // can not be copied verbatim
+                continue;
+            }
+            final String name = new String(nameBytes, "UTF-8");
+            if (!entries.containsKey(name))
+            {
+                entries.put(name, new RawEntry(name, nameBytes, method, dosTime, crc, compressedSize, size, localOffset));
+            }
+        }
+    }
+
+    private static int getShort(byte[] b, int off)
+    {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte[] b, int off)
+    {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+
+    private class RawEntry extends ZipEntryData
+    {
+        private final long localOffset;
+
+        private RawEntry(String name, byte[] nameBytes, int method, long dosTime, long crc, long compressedSize, long size, long localOffset)
+        {
+            super(name, nameBytes, method, dosTime, crc, compressedSize, size, null);
+            this.localOffset = localOffset;
+        }
+
+        @Override
+        public void writeData(@NotNull OutputStream out) throws IOException
+        {
+            raf.seek(localOffset);
+            raf.readFully(buffer, 0, LOCAL_HEADER_LENGTH);
+            if (getInt(buffer, 0) != LOCAL_HEADER_SIGNATURE)
+            {
+                throw new IOException("Corrupt local header for " + getName() + " in " + file.getPath());
+            }
+            raf.seek(localOffset + LOCAL_HEADER_LENGTH + getShort(buffer, 26) + getShort(buffer, 28));
+
+            long remaining = getCompressedSize();
+            while (remaining > 0)
+            {
+                final int chunk = (int) Math.min(buffer.length, remaining);
+                raf.readFully(buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+                remaining -= chunk;
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A minimal zip archive writer which writes entries that are already compressed (or stored).
+ * Unlike {@link java.util.zip.ZipOutputStream} it never touches the entry data, which allows
+ * entries to be deflated elsewhere (e.g. concurrently) and then written sequentially.
+ */
+public class RawZipWriter
+{
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int VERSION_MADE_BY = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final List<CentralRecord> centralRecords = new ArrayList<CentralRecord>();
+    private final byte[] header = new byte[CENTRAL_HEADER_LENGTH];
+    private long written;
+
+    public RawZipWriter(@NotNull File file) throws IOException
+    {
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+    }
+
+    /**
+     * Writes a complete entry, i.e. local file header followed by the (compressed) entry data.
+     * @param entry the entry to write
+     * @throws IOException if writing fails or the archive would require zip64 extensions
+     */
+    public void writeEntry(@NotNull ZipEntryData entry) throws IOException
+    {
+        if (centralRecords.size() >= MAX_ENTRIES)
+        {
+            throw new IOException("Too many entries for a zip archive without zip64 extensions: " + entry.getName());
+        }
+        final long offset = written;
+        final byte[] nameBytes = entry.getNameBytes();
+
+        putInt(header, 0, LOCAL_HEADER_SIGNATURE);
+        putShort(header, 4, versionNeeded(entry));
+        putShort(header, 6, FLAG_UTF8);
+        putShort(header, 8, entry.getMethod());
+        putInt(header, 10, (int) entry.getDosTime());
+        putInt(header, 14, (int) entry.getCrc());
+        putInt(header, 18, (int) entry.getCompressedSize());
+        putInt(header, 22, (int) entry.getSize());
+        putShort(header, 26, nameBytes.length);
+        putShort(header, 28, 0);
+        write(header, 0, LOCAL_HEADER_LENGTH);
+        write(nameBytes, 0, nameBytes.length);
+        entry.writeData(out);
+        written += entry.getCompressedSize();
+
+        if (written > MAX_OFFSET)
+        {
+            throw new IOException("Archive too large for a zip archive without zip64 extensions: " + entry.getName());
+        }
+        centralRecords.add(new CentralRecord(entry, offset));
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     * @throws IOException if writing fails
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            final long centralOffset = written;
+            for (CentralRecord record : centralRecords)
+            {
+                final ZipEntryData entry = record.entry;
+                final byte[] nameBytes = entry.getNameBytes();
+                putInt(header, 0, CENTRAL_HEADER_SIGNATURE);
+                putShort(header, 4, VERSION_MADE_BY);
+                putShort(header, 6, versionNeeded(entry));
+                putShort(header, 8, FLAG_UTF8);
+                putShort(header, 10, entry.getMethod());
+                putInt(header, 12, (int) entry.getDosTime());
+                putInt(header, 16, (int) entry.getCrc());
+                putInt(header, 20, (int) entry.getCompressedSize());
+                putInt(header, 24, (int) entry.getSize());
+                putShort(header, 28, nameBytes.length);
+                putShort(header, 30, 0); // extra field length
+                putShort(header, 32, 0); // comment length
+                putShort(header, 34, 0); // disk number start
+                putShort(header, 36, 0); // internal attributes
+                putInt(header, 38, 0);   // external attributes
+                putInt(header, 42, (int) record.offset);
+                write(header, 0, CENTRAL_HEADER_LENGTH);
+                write(nameBytes, 0, nameBytes.length);
+            }
+            final long centralSize = written - centralOffset;
+
+            putInt(header, 0, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            putShort(header, 4, 0);
+            putShort(header, 6, 0);
+            putShort(header, 8, centralRecords.size());
+            putShort(header, 10, centralRecords.size());
+            putInt(header, 12, (int) centralSize);
+            putInt(header, 16, (int) centralOffset);
+            putShort(header, 20, 0);
+            write(header, 0, END_OF_CENTRAL_DIRECTORY_LENGTH);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    public int getEntryCount()
+    {
+        return centralRecords.size();
+    }
+
+    public long getBytesWritten()
+    {
+        return written;
+    }
+
+    private void write(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    private static int versionNeeded(ZipEntryData entry)
+    {
+        return entry.getMethod() == ZipEntryData.DEFLATED ? 20 : 10;
+    }
+
+    private static void putShort(byte[] b, int off, int value)
+    {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+
+    private static void putInt(byte[] b, int off, int value)
+    {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+
+    private static class CentralRecord
+    {
+        private final ZipEntryData entry;
+        private final long offset;
+
+        private CentralRecord(ZipEntryData entry, long offset)
+        {
+            this.entry = entry.withoutData();
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.jar;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+
+/**
+ * A zip entry together with its already compressed (or stored) data, ready to be written
+ * by {@link RawZipWriter}.
+ */
+public class ZipEntryData
+{
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+    // 1980-01-01 00:00:00, the earliest MS-DOS timestamp and independent of the time zone
+    public static final long MIN_DOS_TIME = (1 << 21) | (1 << 16);
+
+    private final String name;
+    private final byte[] nameBytes;
+    private final int method;
+    private final long dosTime;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    @Nullable
+    private final byte[] data;
+
+    public ZipEntryData(@NotNull String name, int method, long dosTime, long crc, long compressedSize, long size, @Nullable byte[] data)
+    {
+        this(name, toBytes(name), method, dosTime, crc, compressedSize, size, data);
+    }
+
+    protected ZipEntryData(@NotNull String name, @NotNull byte[] nameBytes, int method, long dosTime, long crc, long compressedSize, long size, @Nullable byte[] data)
+    {
+        this.name = name;
+        this.nameBytes = nameBytes;
+        this.method = method;
+        this.dosTime = dosTime;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.data = data;
+    }
+
+    @NotNull
+    public String getName()
+    {
+        return name;
+    }
+
+    @NotNull
+    public byte[] getNameBytes()
+    {
+        return nameBytes;
+    }
+
+    public int getMethod()
+    {
+        return method;
+    }
+
+    public long getDosTime()
+    {
+        return dosTime;
+    }
+
+    public long getCrc()
+    {
+        return crc;
+    }
+
+    public long getCompressedSize()
+    {
+        return compressedSize;
+    }
+
+    public long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Writes exactly {@link #getCompressedSize()} bytes of entry data.
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeData(@NotNull OutputStream out) throws IOException
+    {
+        if (data != null)
+        {
+            out.write(data, 0, (int) compressedSize);
+        }
+        else if (compressedSize != 0)
+        {
+            throw new IOException("No data available for entry " + name);
+        }
+    }
+
+    /**
+     * @return a copy of this entry holding the header information only, so that the data can be
+     * garbage collected once written
+     */
+    @NotNull
+    public ZipEntryData withoutData()
+    {
+        return new ZipEntryData(name, nameBytes, method, dosTime, crc, compressedSize, size, null);
+    }
+
+    @NotNull
+    private static byte[] toBytes(@NotNull String name)
+    {
+        try
+        {
+            return name.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param dosTime the new MS-DOS timestamp
+     * @return a copy of this entry with another timestamp, sharing its data
+     */
+    @NotNull
+    public ZipEntryData withDosTime(long dosTime)
+    {
+        if (dosTime == this.dosTime)
+        {
+            return this;
+        }
+        final ZipEntryData original = this;
+        return new ZipEntryData(name, nameBytes, method, dosTime, crc, compressedSize, size, data)
+        {
+            @Override
+            public void writeData(@NotNull OutputStream out) throws IOException
+            {
+                original.writeData(out);
+            }
+        };
+    }
+
+    /**
+     * Converts a java timestamp to MS-DOS date and time, as used in zip headers.
+     * @param time milliseconds since the epoch
+     * @return the MS-DOS date in the upper 16 bits and the time in the lower 16 bits
+     */
+    public static long toDosTime(long time)
+    {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        final int year = calendar.get(Calendar.YEAR);
+        if (year < 1980)
+        {
+            return MIN_DOS_TIME;
+        }
+        return ((long) (year - 1980) << 25)
+                | ((calendar.get(Calendar.MONTH) + 1) << 21)
+                | (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+}
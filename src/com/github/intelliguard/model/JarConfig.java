@@ -29,6 +29,15 @@ public class JarConfig
 {
     private String linkLibraries;
 
+    private boolean incremental;
+
+    // the jar is only input to the obfuscator, so compressing it is usually wasted effort
+    private boolean storeUncompressed = true;
+
+    private boolean reproducible;
+
+    private boolean mergeArchives;
+
     private List<String> jarEntries = new ArrayList<String>();
 
     public String getLinkLibraries()
@@ -41,6 +50,46 @@ public class JarConfig
         this.linkLibraries = linkLibraries;
     }
 
+    public boolean isIncremental()
+    {
+        return incremental;
+    }
+
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    public boolean isStoreUncompressed()
+    {
+        return storeUncompressed;
+    }
+
+    public void setStoreUncompressed(boolean storeUncompressed)
+    {
+        this.storeUncompressed = storeUncompressed;
+    }
+
+    public boolean isReproducible()
+    {
+        return reproducible;
+    }
+
+    public void setReproducible(boolean reproducible)
+    {
+        this.reproducible = reproducible;
+    }
+
+    public boolean isMergeArchives()
+    {
+        return mergeArchives;
+    }
+
+    public void setMergeArchives(boolean mergeArchives)
+    {
+        this.mergeArchives = mergeArchives;
+    }
+
     public List<String> getJarEntries()
     {
         return jarEntries;
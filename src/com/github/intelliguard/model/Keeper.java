@@ -20,6 +20,7 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiMethod;
 import com.intellij.psi.PsiClass;
+import com.github.intelliguard.util.MethodSignature;
 import com.github.intelliguard.util.PsiUtils;
 
 import java.text.MessageFormat;
@@ -50,8 +51,103 @@ public class Keeper
     // optional
     private String clazz;
 
+    // derived from an annotation, not part of the stored configuration
+    private boolean synthetic;
+
+    // member name which keeps all fields or methods of the matching classes
+    public static final String ALL_MEMBERS = "*";
+
+    /**
+     * Creates a keeper which is derived from the code rather than configured, see
+     * {@link com.github.intelliguard.facet.AnnotationKeepers}.
+     * @param type the type
+     * @param name the name
+     * @param clazz the owning class of a member
+     * @return the keeper
+     */
+    public static Keeper createSynthetic(Type type, String name, String clazz)
+    {
+        final Keeper keeper = new Keeper();
+        keeper.setType(type);
+        keeper.setName(name);
+        keeper.setClazz(clazz);
+        keeper.synthetic = true;
+        return keeper;
+    }
+
+    /**
+     * @return a copy which may be changed without affecting published keepers
+     */
+    public Keeper copy()
+    {
+        final Keeper keeper = new Keeper();
+        keeper.type = type;
+        keeper.name = name;
+        keeper.clazz = clazz;
+        keeper.synthetic = synthetic;
+        return keeper;
+    }
+
+    public boolean isSynthetic()
+    {
+        return synthetic;
+    }
+
+    /**
+     * @return <tt>true</tt> if this keeper matches classes by a wildcard pattern, see {@link KeeperPattern},
+     * or keeps all fields or methods
+     */
+    public boolean isPattern()
+    {
+        if (type == Type.CLASS)
+        {
+            return KeeperPattern.isPattern(name);
+        }
+        return isAllMembers() || KeeperPattern.isPattern(clazz);
+    }
+
+    public boolean isAllMembers()
+    {
+        return type != Type.CLASS && ALL_MEMBERS.equals(name);
+    }
+
+    /**
+     * yGuard takes only exact field and method names, so the only member wildcard is {@link #ALL_MEMBERS}.
+     * Unsupported keepers are ignored by the inspections, the index and the obfuscators alike.
+     * @return <tt>false</tt> for a field or method keeper whose name contains other wildcards
+     */
+    public boolean isSupported()
+    {
+        return type == Type.CLASS || isAllMembers() || !KeeperPattern.isPattern(name);
+    }
+
+    /**
+     * @return the name or pattern of the classes this keeper applies to, <tt>**</tt> for members in all classes
+     */
+    public String getClassPattern()
+    {
+        if (type == Type.CLASS)
+        {
+            return name;
+        }
+        return clazz == null ? "**" : clazz;
+    }
+
     public String toAntElement()
     {
+        if (isPattern())
+        {
+            final String patternSet = MessageFormat.format("<patternset><include name=\"{0}\" /></patternset>", getClassPattern());
+            if (type == Type.CLASS)
+            {
+                return MessageFormat.format("<class>{0}</class>", patternSet);
+            }
+            if (isAllMembers())
+            {
+                return MessageFormat.format("<class classes=\"none\" {0}s=\"private\">{1}</class>", getType().getName(), patternSet);
+            }
+            return MessageFormat.format("<{0} name=\"{1}\">{2}</{0}>", getType().getName(), getName(), patternSet);
+        }
         switch (type)
         {
             case CLASS:
@@ -65,6 +161,14 @@ public class Keeper
 
     public boolean satisfies(PsiElement element)
     {
+        if (!isSupported())
+        {
+            return false;
+        }
+        if (isPattern())
+        {
+            return satisfiesPattern(element);
+        }
         switch (type)
         {
             case CLASS:
@@ -92,8 +196,7 @@ public class Keeper
                 if (element instanceof PsiMethod)
                 {
                     PsiMethod psiMethod = (PsiMethod) element;
-                    String signature = PsiUtils.getSignatureString(psiMethod);
-                    if (signature.equals(getName()))
+                    if (MethodSignature.of(psiMethod).matches(getName()))
                     {
                         if (getClazz() == null || getClazz().equals(PsiUtils.getKeeperName(psiMethod.getContainingClass())))
                         {
@@ -114,6 +217,50 @@ public class Keeper
         return false;
     }
 
+    private boolean satisfiesPattern(PsiElement element)
+    {
+        final KeeperPattern pattern = KeeperPattern.compile(getClassPattern());
+        switch (type)
+        {
+            case CLASS:
+                return element instanceof PsiClass && matches(pattern, element);
+            case FIELD:
+                if (element instanceof PsiField)
+                {
+                    PsiField psiField = (PsiField) element;
+                    return (isAllMembers() || psiField.getName().equals(getName())) && matches(pattern, psiField.getContainingClass());
+                }
+                return false;
+            case METHOD:
+                if (element instanceof PsiMethod)
+                {
+                    PsiMethod psiMethod = (PsiMethod) element;
+                    if (isAllMembers() || MethodSignature.of(psiMethod).matches(getName()))
+                    {
+                        if (matches(pattern, psiMethod.getContainingClass()))
+                        {
+                            return true;
+                        }
+                        for (PsiMethod superMethod : psiMethod.findDeepestSuperMethods())
+                        {
+                            if (matches(pattern, superMethod.getContainingClass()))
+                            {
+                                return true;
+                            }
+                        }
+                    }
+                }
+                return false;
+        }
+        return false;
+    }
+
+    private static boolean matches(KeeperPattern pattern, PsiElement psiClass)
+    {
+        final String className = PsiUtils.getKeeperName(psiClass);
+        return className != null && pattern.matches(className);
+    }
+
     public String getName()
     {
         return name;
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.model;
+
+import com.github.intelliguard.util.MethodSignature;
+import com.github.intelliguard.util.PsiUtils;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiMethod;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index of keepers by type, name and owning class, so that finding the keepers of a PSI element
+ * does not depend on the number of keepers. Field and method keepers without an owning class are
+ * stored under the <tt>null</tt> class. Pattern keepers are stored by class pattern in a
+ * {@link KeeperPatternTrie} per type.
+ */
+public class KeeperIndex
+{
+    private final Map<Keeper.Type, Map<String, Map<String, List<Keeper>>>> index =
+            new EnumMap<Keeper.Type, Map<String, Map<String, List<Keeper>>>>(Keeper.Type.class);
+    private final Map<Keeper.Type, KeeperPatternTrie> patterns = new EnumMap<Keeper.Type, KeeperPatternTrie>(Keeper.Type.class);
+
+    public KeeperIndex(@NotNull Collection<Keeper> keepers)
+    {
+        for (Keeper.Type type : Keeper.Type.values())
+        {
+            index.put(type, new HashMap<String, Map<String, List<Keeper>>>());
+            patterns.put(type, new KeeperPatternTrie());
+        }
+        for (Keeper keeper : keepers)
+        {
+            add(keeper);
+        }
+    }
+
+    private void add(@NotNull Keeper keeper)
+    {
+        if (keeper.getType() == null || keeper.getName() == null)
+        {
+            // can never be satisfied, see Keeper.satisfies
+            return;
+        }
+        if (!keeper.isSupported())
+        {
+            return;
+        }
+        if (keeper.isPattern())
+        {
+            patterns.get(keeper.getType()).add(keeper.getClassPattern(), keeper);
+            return;
+        }
+        final Map<String, Map<String, List<Keeper>>> byName = index.get(keeper.getType());
+        Map<String, List<Keeper>> byClass = byName.get(keeper.getName());
+        if (byClass == null)
+        {
+            byClass = new HashMap<String, List<Keeper>>(2);
+            byName.put(keeper.getName(), byClass);
+        }
+        final String clazz = keeper.getType() == Keeper.Type.CLASS ? null : keeper.getClazz();
+        List<Keeper> list = byClass.get(clazz);
+        if (list == null)
+        {
+            list = new ArrayList<Keeper>(1);
+            byClass.put(clazz, list);
+        }
+        list.add(keeper);
+    }
+
+    /**
+     * Finds the keepers which keep <tt>element</tt>, with the same result as testing every keeper with
+     * {@link Keeper#satisfies(PsiElement)}. Constructors are kept by the keepers of their class.
+     * @param element a class, method or field
+     * @return the keepers, empty if none
+     */
+    @NotNull
+    public List<Keeper> find(@NotNull PsiElement element)
+    {
+        if (element instanceof PsiMethod && ((PsiMethod) element).isConstructor())
+        {
+            return findClassKeepers(PsiUtils.getKeeperName(((PsiMethod) element).getContainingClass()));
+        }
+        if (element instanceof PsiClass)
+        {
+            return findClassKeepers(PsiUtils.getKeeperName(element));
+        }
+        if (element instanceof PsiField)
+        {
+            final PsiField psiField = (PsiField) element;
+            final String owner = PsiUtils.getKeeperName(psiField.getContainingClass());
+            final Map<String, List<Keeper>> byClass = index.get(Keeper.Type.FIELD).get(psiField.getName());
+            final KeeperPatternTrie trie = patterns.get(Keeper.Type.FIELD);
+            if (byClass == null && trie.isEmpty())
+            {
+                return Collections.emptyList();
+            }
+            final List<Keeper> found = new ArrayList<Keeper>();
+            if (byClass != null)
+            {
+                addAll(found, byClass.get(null));
+                addAll(found, byClass.get(owner));
+            }
+            matchMembers(trie, owner, psiField.getName(), found);
+            return found;
+        }
+        if (element instanceof PsiMethod)
+        {
+            final PsiMethod psiMethod = (PsiMethod) element;
+            final String signature = MethodSignature.of(psiMethod).getText();
+            final Map<String, List<Keeper>> byClass = index.get(Keeper.Type.METHOD).get(signature);
+            final KeeperPatternTrie trie = patterns.get(Keeper.Type.METHOD);
+            if (byClass == null && trie.isEmpty())
+            {
+                return Collections.emptyList();
+            }
+            final List<Keeper> found = new ArrayList<Keeper>();
+            final String owner = PsiUtils.getKeeperName(psiMethod.getContainingClass());
+            if (byClass != null)
+            {
+                addAll(found, byClass.get(null));
+                addAll(found, byClass.get(owner));
+            }
+            matchMembers(trie, owner, signature, found);
+            // a method keeper also keeps overriding methods, only look for super methods when such a keeper may exist
+            final int ownKeys = byClass == null ? 0 : (byClass.containsKey(null) ? 1 : 0) + (byClass.containsKey(owner) ? 1 : 0);
+            if ((byClass != null && byClass.size() > ownKeys) || !trie.isEmpty())
+            {
+                for (PsiMethod superMethod : psiMethod.findDeepestSuperMethods())
+                {
+                    final String superOwner = PsiUtils.getKeeperName(superMethod.getContainingClass());
+                    if (superOwner != null && !superOwner.equals(owner))
+                    {
+                        if (byClass != null)
+                        {
+                            for (Keeper keeper : get(byClass, superOwner))
+                            {
+                                if (!found.contains(keeper))
+                                {
+                                    found.add(keeper);
+                                }
+                            }
+                        }
+                        matchMembers(trie, superOwner, signature, found);
+                    }
+                }
+            }
+            return found;
+        }
+        return Collections.emptyList();
+    }
+
+    @NotNull
+    private List<Keeper> findClassKeepers(@Nullable String className)
+    {
+        final List<Keeper> exact = get(Keeper.Type.CLASS, className, null);
+        final KeeperPatternTrie trie = patterns.get(Keeper.Type.CLASS);
+        if (trie.isEmpty() || className == null)
+        {
+            return copy(exact);
+        }
+        final List<Keeper> found = new ArrayList<Keeper>(exact);
+        trie.match(className, found);
+        return found;
+    }
+
+    private static void matchMembers(@NotNull KeeperPatternTrie trie, @Nullable String owner, @NotNull String memberName, @NotNull List<Keeper> found)
+    {
+        if (trie.isEmpty() || owner == null)
+        {
+            return;
+        }
+        final List<Keeper> candidates = new ArrayList<Keeper>();
+        trie.match(owner, candidates);
+        for (Keeper keeper : candidates)
+        {
+            if ((keeper.isAllMembers() || memberName.equals(keeper.getName())) && !found.contains(keeper))
+            {
+                found.add(keeper);
+            }
+        }
+    }
+
+    @NotNull
+    private List<Keeper> get(@NotNull Keeper.Type type, @Nullable String name, @Nullable String clazz)
+    {
+        if (name == null)
+        {
+            return Collections.emptyList();
+        }
+        final Map<String, List<Keeper>> byClass = index.get(type).get(name);
+        return byClass == null ? Collections.<Keeper>emptyList() : get(byClass, clazz);
+    }
+
+    @NotNull
+    private static List<Keeper> get(@NotNull Map<String, List<Keeper>> byClass, @Nullable String clazz)
+    {
+        final List<Keeper> list = byClass.get(clazz);
+        return list == null ? Collections.<Keeper>emptyList() : list;
+    }
+
+    @NotNull
+    private static List<Keeper> copy(@NotNull List<Keeper> keepers)
+    {
+        return keepers.isEmpty() ? keepers : new ArrayList<Keeper>(keepers);
+    }
+
+    private static void addAll(@NotNull List<Keeper> found, @Nullable List<Keeper> keepers)
+    {
+        if (keepers != null)
+        {
+            found.addAll(keepers);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * A compiled class name pattern with the wildcards used by yGuard pattern sets and ProGuard:
+ * <tt>?</tt> matches one character and <tt>*</tt> any number of characters except the package
+ * separator, while <tt>**</tt> also matches package separators. The pattern is compiled into a
+ * nondeterministic automaton which is run over the name in a single pass.
+ */
+public class KeeperPattern
+{
+    private static final char ANY_CHAR = 0;
+    private static final char STAR = 1;
+    private static final char DOUBLE_STAR = 2;
+    private static final char LITERAL = 3;
+
+    private final String pattern;
+    // one token per automaton state, the state after the last token accepts
+    private final char[] kinds;
+    private final char[] chars;
+
+    private KeeperPattern(@NotNull String pattern)
+    {
+        this.pattern = pattern;
+        final StringBuilder kindBuilder = new StringBuilder();
+        final StringBuilder charBuilder = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            final char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*')
+            {
+                kindBuilder.append(DOUBLE_STAR);
+                charBuilder.append(c);
+                i++;
+            }
+            else if (c == '*')
+            {
+                kindBuilder.append(STAR);
+                charBuilder.append(c);
+            }
+            else if (c == '?')
+            {
+                kindBuilder.append(ANY_CHAR);
+                charBuilder.append(c);
+            }
+            else
+            {
+                kindBuilder.append(LITERAL);
+                charBuilder.append(c);
+            }
+        }
+        kinds = kindBuilder.toString().toCharArray();
+        chars = charBuilder.toString().toCharArray();
+    }
+
+    @NotNull
+    public static KeeperPattern compile(@NotNull String pattern)
+    {
+        return new KeeperPattern(pattern);
+    }
+
+    /**
+     * @param name a class name or pattern
+     * @return <tt>true</tt> if <tt>name</tt> contains wildcards
+     */
+    public static boolean isPattern(@Nullable String name)
+    {
+        return name != null && (name.indexOf('*') >= 0 || name.indexOf('?') >= 0);
+    }
+
+    @NotNull
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    public boolean matches(@NotNull String name)
+    {
+        return matches(name, 0, name.length());
+    }
+
+    /**
+     * @param text the text
+     * @param from start index, inclusive
+     * @param to end index, exclusive
+     * @return <tt>true</tt> if the whole range matches
+     */
+    public boolean matches(@NotNull CharSequence text, int from, int to)
+    {
+        BitSet states = new BitSet(kinds.length + 1);
+        states.set(0);
+        closure(states);
+        BitSet next = new BitSet(kinds.length + 1);
+        for (int i = from; i < to && !states.isEmpty(); i++)
+        {
+            final char c = text.charAt(i);
+            next.clear();
+            for (int state = states.nextSetBit(0); state >= 0 && state < kinds.length; state = states.nextSetBit(state + 1))
+            {
+                switch (kinds[state])
+                {
+                    case LITERAL:
+                        if (chars[state] == c)
+                        {
+                            next.set(state + 1);
+                        }
+                        break;
+                    case ANY_CHAR:
+                        if (c != '.')
+                        {
+                            next.set(state + 1);
+                        }
+                        break;
+                    case STAR:
+                        if (c != '.')
+                        {
+                            next.set(state);
+                        }
+                        break;
+                    case DOUBLE_STAR:
+                        next.set(state);
+                        break;
+                }
+            }
+            closure(next);
+            final BitSet swap = states;
+            states = next;
+            next = swap;
+        }
+        return states.get(kinds.length);
+    }
+
+    private void closure(@NotNull BitSet states)
+    {
+        // a star may match nothing, so its state also stands for the state after it
+        for (int state = 0; state < kinds.length; state++)
+        {
+            if (states.get(state) && (kinds[state] == STAR || kinds[state] == DOUBLE_STAR))
+            {
+                states.set(state + 1);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keepers stored by class name pattern in a trie over package segments. Literal segments are
+ * followed by hash lookup, so matching a name only looks at the patterns which share its packages.
+ * A segment with <tt>*</tt> or <tt>?</tt> is matched as a {@link KeeperPattern}, and everything
+ * from the first segment with <tt>**</tt> on is matched against the rest of the name.
+ */
+public class KeeperPatternTrie
+{
+    private final Node root = new Node();
+    private int size;
+
+    private static class Node
+    {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private final List<Node> globChildren = new ArrayList<Node>();
+        private final List<Keeper> terminal = new ArrayList<Keeper>();
+        private final List<Tail> tails = new ArrayList<Tail>();
+        private KeeperPattern glob;
+    }
+
+    private static class Tail
+    {
+        // null for a plain "**", which matches any rest
+        private final KeeperPattern pattern;
+        private final Keeper keeper;
+
+        private Tail(@Nullable KeeperPattern pattern, @NotNull Keeper keeper)
+        {
+            this.pattern = pattern;
+            this.keeper = keeper;
+        }
+    }
+
+    public void add(@NotNull String pattern, @NotNull Keeper keeper)
+    {
+        Node node = root;
+        int from = 0;
+        while (true)
+        {
+            int end = pattern.indexOf('.', from);
+            if (end < 0)
+            {
+                end = pattern.length();
+            }
+            final String segment = pattern.substring(from, end);
+            if (segment.contains("**"))
+            {
+                final String rest = pattern.substring(from);
+                node.tails.add(new Tail("**".equals(rest) ? null : KeeperPattern.compile(rest), keeper));
+                break;
+            }
+            node = KeeperPattern.isPattern(segment) ? getGlobChild(node, segment) : getChild(node, segment);
+            if (end == pattern.length())
+            {
+                node.terminal.add(keeper);
+                break;
+            }
+            from = end + 1;
+        }
+        size++;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Adds the keepers whose pattern matches <tt>name</tt> to <tt>found</tt>.
+     * @param name a class name
+     * @param found the list to add to, keepers already in the list are not added again
+     */
+    public void match(@NotNull String name, @NotNull List<Keeper> found)
+    {
+        if (size != 0 && name.length() != 0)
+        {
+            match(root, name, 0, found);
+        }
+    }
+
+    private static void match(@NotNull Node node, @NotNull String name, int from, @NotNull List<Keeper> found)
+    {
+        if (from > name.length())
+        {
+            addAll(found, node.terminal);
+            return;
+        }
+        for (Tail tail : node.tails)
+        {
+            if (tail.pattern == null || tail.pattern.matches(name, from, name.length()))
+            {
+                add(found, tail.keeper);
+            }
+        }
+        int end = name.indexOf('.', from);
+        if (end < 0)
+        {
+            end = name.length();
+        }
+        if (!node.children.isEmpty())
+        {
+            final Node child = node.children.get(name.substring(from, end));
+            if (child != null)
+            {
+                match(child, name, end + 1, found);
+            }
+        }
+        for (Node child : node.globChildren)
+        {
+            if (child.glob.matches(name, from, end))
+            {
+                match(child, name, end + 1, found);
+            }
+        }
+    }
+
+    @NotNull
+    private static Node getChild(@NotNull Node node, @NotNull String segment)
+    {
+        Node child = node.children.get(segment);
+        if (child == null)
+        {
+            child = new Node();
+            node.children.put(segment, child);
+        }
+        return child;
+    }
+
+    @NotNull
+    private static Node getGlobChild(@NotNull Node node, @NotNull String segment)
+    {
+        for (Node child : node.globChildren)
+        {
+            if (child.glob.getPattern().equals(segment))
+            {
+                return child;
+            }
+        }
+        final Node child = new Node();
+        child.glob = KeeperPattern.compile(segment);
+        node.globChildren.add(child);
+        return child;
+    }
+
+    private static void addAll(@NotNull List<Keeper> found, @NotNull List<Keeper> keepers)
+    {
+        for (Keeper keeper : keepers)
+        {
+            add(found, keeper);
+        }
+    }
+
+    private static void add(@NotNull List<Keeper> found, @NotNull Keeper keeper)
+    {
+        for (Keeper k : found)
+        {
+            if (k == keeper)
+            {
+                return;
+            }
+        }
+        found.add(keeper);
+    }
+}
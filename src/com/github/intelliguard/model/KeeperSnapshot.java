@@ -0,0 +1,68 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.model;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable version of the keepers of a facet together with their lookup index. Readers take the
+ * current snapshot without locking and may use it from any thread; writers publish a new snapshot
+ * instead of changing the keepers in place.
+ */
+public final class KeeperSnapshot
+{
+    private final List<Keeper> keepers;
+    private final KeeperIndex index;
+    private final long version;
+
+    public KeeperSnapshot(@NotNull Collection<Keeper> keepers, long version)
+    {
+        this.keepers = Collections.unmodifiableList(new ArrayList<Keeper>(keepers));
+        this.index = new KeeperIndex(this.keepers);
+        this.version = version;
+    }
+
+    /**
+     * @return the keepers, unmodifiable
+     */
+    @NotNull
+    public List<Keeper> getKeepers()
+    {
+        return keepers;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @param element a class, method or field
+     * @return the keepers which keep <tt>element</tt>, see {@link KeeperIndex#find(PsiElement)}
+     */
+    @NotNull
+    public List<Keeper> find(@NotNull PsiElement element)
+    {
+        return keepers.isEmpty() ? Collections.<Keeper>emptyList() : index.find(element);
+    }
+}
@@ -23,6 +23,7 @@ import com.github.intelliguard.inspection.GuardInspectionBase;
 import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.model.Keeper;
 import com.github.intelliguard.util.PsiUtils;
+import com.intellij.util.Function;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -56,7 +57,7 @@ public class RenameListenerProvider implements RefactoringElementListenerProvide
                     elementRenamed(newElement);
                 }
 
-                public void elementRenamed(@NotNull PsiElement newElement)
+                public void elementRenamed(@NotNull final PsiElement newElement)
                 {
                     final String newName = PsiUtils.getKeeperName(newElement);
                     if (newName == null)
@@ -67,66 +68,79 @@ public class RenameListenerProvider implements RefactoringElementListenerProvide
                     // renamed package
                     if (newElement instanceof PsiPackage)
                     {
-                        for (Keeper keeper : configuration.keepers)
+                        configuration.updateKeepers(new Function<Keeper, Keeper>()
                         {
-                            if (keeper.getType() == Keeper.Type.CLASS)
+                            public Keeper fun(Keeper keeper)
                             {
-                                final String clazz = keeper.getName();
-                                String oldPackage = getPackageName(clazz);
-                                if (oldPackage.equals(oldName))
-                                {
-                                    keeper.setName(newName + "." + getSimpleName(clazz));
-                                }
-                            }
-                            else
-                            {
-                                final String clazz = keeper.getClazz();
-                                if (clazz != null)
+                                if (keeper.getType() == Keeper.Type.CLASS)
                                 {
+                                    final String clazz = keeper.getName();
                                     String oldPackage = getPackageName(clazz);
                                     if (oldPackage.equals(oldName))
                                     {
-                                        keeper.setClazz(newName + "." + getSimpleName(clazz));
+                                        keeper = keeper.copy();
+                                        keeper.setName(newName + "." + getSimpleName(clazz));
                                     }
                                 }
+                                else
+                                {
+                                    final String clazz = keeper.getClazz();
+                                    if (clazz != null)
+                                    {
+                                        String oldPackage = getPackageName(clazz);
+                                        if (oldPackage.equals(oldName))
+                                        {
+                                            keeper = keeper.copy();
+                                            keeper.setClazz(newName + "." + getSimpleName(clazz));
+                                        }
+                                    }
+                                }
+                                return keeper;
                             }
-                        }
+                        });
                         return;
                     }
 
                     // renamed Main-Class
                     if (newElement instanceof PsiClass && oldName.equals(configuration.mainclass))
                     {
-                        configuration.mainclass = newName;
+                        configuration.setMainClass(newName);
                     }
 
-                    for (Keeper keeper : configuration.keepers)
+                    configuration.updateKeepers(new Function<Keeper, Keeper>()
                     {
-                        if (newElement instanceof PsiClass)
+                        public Keeper fun(Keeper keeper)
                         {
-                            if (keeper.getType() == Keeper.Type.CLASS)
+                            if (newElement instanceof PsiClass)
                             {
-                                if (oldName.equals(keeper.getName()))
+                                if (keeper.getType() == Keeper.Type.CLASS)
                                 {
-                                    keeper.setName(newName);
+                                    if (oldName.equals(keeper.getName()))
+                                    {
+                                        keeper = keeper.copy();
+                                        keeper.setName(newName);
+                                    }
+                                }
+                                else
+                                {
+                                    if (oldName.equals(keeper.getClazz()))
+                                    {
+                                        keeper = keeper.copy();
+                                        keeper.setClazz(newName);
+                                    }
                                 }
                             }
                             else
                             {
-                                if (oldName.equals(keeper.getClazz()))
+                                if (oldName.equals(keeper.getName()))
                                 {
-                                    keeper.setClazz(newName);
+                                    keeper = keeper.copy();
+                                    keeper.setName(newName);
                                 }
                             }
+                            return keeper;
                         }
-                        else
-                        {
-                            if (oldName.equals(keeper.getName()))
-                            {
-                                keeper.setName(newName);
-                            }
-                        }
-                    }
+                    });
                 }
             };
         }
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.facet.KeepStatus;
+import com.github.intelliguard.model.Keeper;
+import com.github.intelliguard.util.InspectionUtils;
+import com.github.intelliguard.util.PsiUtils;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.roots.ContentIterator;
+import com.intellij.openapi.roots.ModuleFileIndex;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaRecursiveElementWalkingVisitor;
+import com.intellij.psi.PsiAnonymousClass;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiTypeParameter;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What obfuscating a module will keep: the keep status of every class, method and field in the
+ * production sources, aggregated per package. Files are analyzed in parallel read actions. The
+ * result of each file is remembered with its modification stamp, so a refresh only analyzes files
+ * which changed since the last update, unless the facet configuration changed.
+ */
+public class CoverageReport
+{
+    private static final Key<CoverageReport> REPORT_KEY = Key.create("IntelliGuard.CoverageReport");
+
+    public static final String REASON_KEEPER = "Keeper";
+    public static final String REASON_MAIN_CLASS = "Main-Class";
+    public static final String REASON_LIBRARY = "Implements library method";
+
+    private final Module module;
+    private final Map<VirtualFile, FileCoverage> files = new ConcurrentHashMap<VirtualFile, FileCoverage>();
+    private GuardFacetConfiguration analyzedConfiguration;
+    private long analyzedRevision = -1;
+    private int sourceFileCount;
+
+    /**
+     * A symbol which keeps its name.
+     */
+    public static class KeptSymbol
+    {
+        private final Keeper.Type type;
+        private final String className;
+        private final String memberName;
+        private final String reason;
+
+        private KeptSymbol(@NotNull Keeper.Type type, @NotNull String className, @Nullable String memberName, @NotNull String reason)
+        {
+            this.type = type;
+            this.className = className;
+            this.memberName = memberName;
+            this.reason = reason;
+        }
+
+        @NotNull
+        public Keeper.Type getType()
+        {
+            return type;
+        }
+
+        @NotNull
+        public String getClassName()
+        {
+            return className;
+        }
+
+        @Nullable
+        public String getMemberName()
+        {
+            return memberName;
+        }
+
+        @NotNull
+        public String getReason()
+        {
+            return reason;
+        }
+    }
+
+    /**
+     * Symbol counts indexed by {@link Keeper.Type#ordinal()}.
+     */
+    public static class Counts
+    {
+        private final int[] total = new int[Keeper.Type.values().length];
+        private final int[] kept = new int[Keeper.Type.values().length];
+
+        public int getTotal(@NotNull Keeper.Type type)
+        {
+            return total[type.ordinal()];
+        }
+
+        public int getKept(@NotNull Keeper.Type type)
+        {
+            return kept[type.ordinal()];
+        }
+
+        public int getTotal()
+        {
+            return sum(total);
+        }
+
+        public int getKept()
+        {
+            return sum(kept);
+        }
+
+        void increment(@NotNull Keeper.Type type, boolean isKept)
+        {
+            total[type.ordinal()]++;
+            if (isKept)
+            {
+                kept[type.ordinal()]++;
+            }
+        }
+
+        void add(@NotNull Counts counts)
+        {
+            for (int i = 0; i < total.length; i++)
+            {
+                total[i] += counts.total[i];
+                kept[i] += counts.kept[i];
+            }
+        }
+
+        private static int sum(int[] values)
+        {
+            int sum = 0;
+            for (int value : values)
+            {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+
+    public static class PackageCoverage extends Counts
+    {
+        private final String packageName;
+        private final List<KeptSymbol> keptSymbols = new ArrayList<KeptSymbol>();
+
+        private PackageCoverage(@NotNull String packageName)
+        {
+            this.packageName = packageName;
+        }
+
+        @NotNull
+        public String getPackageName()
+        {
+            return packageName;
+        }
+
+        @NotNull
+        public List<KeptSymbol> getKeptSymbols()
+        {
+            return keptSymbols;
+        }
+    }
+
+    private static class FileCoverage extends Counts
+    {
+        private final long stamp;
+        private final String packageName;
+        private final List<KeptSymbol> keptSymbols = new ArrayList<KeptSymbol>();
+
+        private FileCoverage(long stamp, @NotNull String packageName)
+        {
+            this.stamp = stamp;
+            this.packageName = packageName;
+        }
+
+        private void count(@NotNull Keeper.Type type, @NotNull String className, @Nullable String memberName, @Nullable String reason)
+        {
+            increment(type, reason != null);
+            if (reason != null)
+            {
+                keptSymbols.add(new KeptSymbol(type, className, memberName, reason));
+            }
+        }
+    }
+
+    private CoverageReport(@NotNull Module module)
+    {
+        this.module = module;
+    }
+
+    /**
+     * @param module a module with an obfuscation facet
+     * @return the report of the module, empty until {@link #update} has been called
+     */
+    @NotNull
+    public static synchronized CoverageReport getInstance(@NotNull Module module)
+    {
+        CoverageReport report = module.getUserData(REPORT_KEY);
+        if (report == null)
+        {
+            report = new CoverageReport(module);
+            module.putUserData(REPORT_KEY, report);
+        }
+        return report;
+    }
+
+    @NotNull
+    public Module getModule()
+    {
+        return module;
+    }
+
+    /**
+     * Analyzes the source files which changed since the last update. Must not be called in a read action,
+     * and documents should be committed first. Every read waits for indexing to finish, since the
+     * keep status of a file is computed with the indexes.
+     * @param configuration the facet configuration of the module
+     * @param full <tt>true</tt> to analyze every file, e.g. after changes to a class hierarchy in other files
+     * @param indicator the progress indicator
+     * @return the number of analyzed files
+     */
+    public synchronized int update(@NotNull final GuardFacetConfiguration configuration, boolean full, @NotNull final ProgressIndicator indicator)
+    {
+        final long revision = configuration.getModificationTracker().getModificationCount();
+        if (full || configuration != analyzedConfiguration || revision != analyzedRevision)
+        {
+            files.clear();
+        }
+
+        indicator.setText("Collecting source files of " + module.getName());
+        final DumbService dumbService = DumbService.getInstance(module.getProject());
+        final Map<VirtualFile, Long> sourceFiles = dumbService.runReadActionInSmartMode(new Computable<Map<VirtualFile, Long>>()
+        {
+            public Map<VirtualFile, Long> compute()
+            {
+                return collectSourceFiles();
+            }
+        });
+
+        files.keySet().retainAll(sourceFiles.keySet());
+        final List<VirtualFile> stale = new ArrayList<VirtualFile>();
+        for (Map.Entry<VirtualFile, Long> entry : sourceFiles.entrySet())
+        {
+            final FileCoverage coverage = files.get(entry.getKey());
+            if (coverage == null || coverage.stamp != entry.getValue())
+            {
+                stale.add(entry.getKey());
+            }
+        }
+
+        indicator.setText("Analyzing " + stale.size() + " files of " + module.getName());
+        indicator.setIndeterminate(false);
+        final AtomicInteger done = new AtomicInteger();
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(stale, indicator, false, new Processor<VirtualFile>()
+        {
+            public boolean process(final VirtualFile file)
+            {
+                // indexing may start again while the files are analyzed
+                final FileCoverage coverage = dumbService.runReadActionInSmartMode(new Computable<FileCoverage>()
+                {
+                    public FileCoverage compute()
+                    {
+                        return analyze(configuration, file, sourceFiles.get(file));
+                    }
+                });
+                if (coverage != null)
+                {
+                    files.put(file, coverage);
+                }
+                indicator.setFraction((double) done.incrementAndGet() / stale.size());
+                return true;
+            }
+        });
+
+        analyzedConfiguration = configuration;
+        analyzedRevision = revision;
+        sourceFileCount = sourceFiles.size();
+        return stale.size();
+    }
+
+    /**
+     * @return the number of source files of the module at the last update
+     */
+    public synchronized int getSourceFileCount()
+    {
+        return sourceFileCount;
+    }
+
+    /**
+     * @return the coverage of every package, sorted by package name
+     */
+    @NotNull
+    public List<PackageCoverage> getPackages()
+    {
+        final Map<String, PackageCoverage> packages = new TreeMap<String, PackageCoverage>();
+        for (FileCoverage coverage : files.values())
+        {
+            PackageCoverage packageCoverage = packages.get(coverage.packageName);
+            if (packageCoverage == null)
+            {
+                packageCoverage = new PackageCoverage(coverage.packageName);
+                packages.put(coverage.packageName, packageCoverage);
+            }
+            packageCoverage.add(coverage);
+            packageCoverage.keptSymbols.addAll(coverage.keptSymbols);
+        }
+        return new ArrayList<PackageCoverage>(packages.values());
+    }
+
+    /**
+     * @param packages the packages, see {@link #getPackages()}
+     * @return the sum of the counts
+     */
+    @NotNull
+    public static Counts getTotals(@NotNull Collection<PackageCoverage> packages)
+    {
+        final Counts totals = new Counts();
+        for (PackageCoverage packageCoverage : packages)
+        {
+            totals.add(packageCoverage);
+        }
+        return totals;
+    }
+
+    /**
+     * @return the production source files of the module with their modification stamps
+     */
+    @NotNull
+    private Map<VirtualFile, Long> collectSourceFiles()
+    {
+        final Map<VirtualFile, Long> sourceFiles = new LinkedHashMap<VirtualFile, Long>();
+        final FileDocumentManager documentManager = FileDocumentManager.getInstance();
+        final ModuleFileIndex fileIndex = ModuleRootManager.getInstance(module).getFileIndex();
+        fileIndex.iterateContent(new ContentIterator()
+        {
+            public boolean processFile(VirtualFile file)
+            {
+                // test sources do not end up in the obfuscated jar
+                if (!file.isDirectory() && file.getFileType() == StdFileTypes.JAVA
+                        && fileIndex.isInSourceContent(file) && !fileIndex.isInTestSourceContent(file))
+                {
+                    // the document stamp also changes with unsaved edits
+                    final Document document = documentManager.getCachedDocument(file);
+                    sourceFiles.put(file, document != null ? document.getModificationStamp() : file.getModificationStamp());
+                }
+                return true;
+            }
+        });
+        return sourceFiles;
+    }
+
+    @Nullable
+    private FileCoverage analyze(@NotNull final GuardFacetConfiguration configuration, @NotNull VirtualFile file, long stamp)
+    {
+        if (!file.isValid())
+        {
+            return null;
+        }
+        final PsiFile psiFile = PsiManager.getInstance(module.getProject()).findFile(file);
+        if (!(psiFile instanceof PsiJavaFile))
+        {
+            return null;
+        }
+        final FileCoverage coverage = new FileCoverage(stamp, ((PsiJavaFile) psiFile).getPackageName());
+        psiFile.accept(new JavaRecursiveElementWalkingVisitor()
+        {
+            @Override
+            public void visitClass(PsiClass aClass)
+            {
+                // anonymous classes are always renamed and type parameters are not classes at runtime
+                if (aClass instanceof PsiAnonymousClass || aClass instanceof PsiTypeParameter)
+                {
+                    return;
+                }
+                final String className = PsiUtils.getKeeperName(aClass);
+                if (className == null)
+                {
+                    return;
+                }
+                coverage.count(Keeper.Type.CLASS, className, null, getReason(configuration.computeKeepStatus(aClass)));
+                for (PsiField field : aClass.getFields())
+                {
+                    coverage.count(Keeper.Type.FIELD, className, field.getName(), getReason(configuration.computeKeepStatus(field)));
+                }
+                for (PsiMethod method : aClass.getMethods())
+                {
+                    if (method.isConstructor())
+                    {
+                        continue;
+                    }
+                    String reason = getReason(configuration.computeKeepStatus(method));
+                    if (reason == null && InspectionUtils.isDefinedInLibrary(method))
+                    {
+                        reason = REASON_LIBRARY;
+                    }
+                    coverage.count(Keeper.Type.METHOD, className, PsiUtils.getSignatureString(method), reason);
+                }
+                // inner classes
+                super.visitClass(aClass);
+            }
+
+        });
+        return coverage;
+    }
+
+    @Nullable
+    private static String getReason(@NotNull KeepStatus status)
+    {
+        if (status.isKeptByMainClass())
+        {
+            return REASON_MAIN_CLASS;
+        }
+        return status.getKeepers().length != 0 ? REASON_KEEPER : null;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.github.intelliguard.GuardProjectComponent;
+import com.github.intelliguard.facet.GuardFacet;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.psi.PsiDocumentManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.text.MessageFormat;
+
+/**
+ * Background task which updates a {@link CoverageReport} and shows it in the tool window.
+ */
+public class CoverageTask extends Task.Backgroundable
+{
+    private final CoverageReport report;
+    private final boolean full;
+    private int analyzedFiles;
+    private int sourceFiles;
+    private long millis;
+
+    public CoverageTask(@NotNull CoverageReport report, boolean full)
+    {
+        super(report.getModule().getProject(), "Obfuscation coverage of " + report.getModule().getName(), true);
+        this.report = report;
+        this.full = full;
+    }
+
+    @Override
+    public void queue()
+    {
+        // the report compares document stamps, so the PSI must be up to date with the documents
+        PsiDocumentManager.getInstance(report.getModule().getProject()).commitAllDocuments();
+        super.queue();
+    }
+
+    public void run(@NotNull ProgressIndicator indicator)
+    {
+        final GuardFacet guardFacet = GuardFacet.getInstance(report.getModule());
+        if (guardFacet == null)
+        {
+            return;
+        }
+        DumbService.getInstance(report.getModule().getProject()).waitForSmartMode();
+        final long start = System.currentTimeMillis();
+        analyzedFiles = report.update(guardFacet.getConfiguration(), full, indicator);
+        sourceFiles = report.getSourceFileCount();
+        millis = System.currentTimeMillis() - start;
+    }
+
+    @Override
+    public void onSuccess()
+    {
+        final GuardProjectComponent projectComponent = report.getModule().getProject().getComponent(GuardProjectComponent.class);
+        projectComponent.showCoverageReport(report, MessageFormat.format("Analyzed {0} of {1} files in {2} ms", analyzedFiles, sourceFiles, millis));
+    }
+}
@@ -17,17 +17,23 @@
 package com.github.intelliguard.runner;
 
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.compiler.make.ManifestBuilder;
 import com.intellij.openapi.roots.ProjectRootsTraversing;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PathsList;
+import com.github.intelliguard.jar.JarIndex;
+import com.github.intelliguard.jar.JarStatistics;
+import com.github.intelliguard.jar.ManifestWriter;
+import com.github.intelliguard.jar.ParallelJarWriter;
+import com.github.intelliguard.jar.RawZipReader;
 import com.github.intelliguard.model.JarConfig;
 import com.github.intelliguard.util.ModuleUtils;
 
 import java.io.*;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
-import java.util.jar.JarOutputStream;
-import java.util.jar.JarEntry;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -58,6 +64,23 @@ public class JarTask implements Runnable
     }
 
     public void run()
+    {
+        final RunMetrics metrics = runProgress.getMetrics();
+        final long start = System.currentTimeMillis();
+        metrics.startHeapSampling();
+        try
+        {
+            buildJar();
+        }
+        finally
+        {
+            metrics.stopHeapSampling();
+            metrics.setJarMillis(System.currentTimeMillis() - start);
+            metrics.setInJarSize(outFile.length());
+        }
+    }
+
+    private void buildJar()
     {
         Manifest manifest = new Manifest();
         manifest = createManifest(manifest, jarConfig, module);
@@ -68,39 +91,130 @@ public class JarTask implements Runnable
         }
 
         final File classesDir = ModuleUtils.getModuleOutputDir(module);
+        runProgress.setText("Building jar " + outFile.getName());
 
-        JarOutputStream jos = null;
+        final File indexFile = JarIndex.getIndexFile(outFile);
+        RawZipReader previousJar = null;
+        final List<RawZipReader> mergedArchives = new ArrayList<RawZipReader>();
+        File targetFile = outFile;
+        boolean writing = false;
 
         try
         {
             outFile.getParentFile().mkdirs();
-            jos = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(outFile)), manifest);
+
+            final ParallelJarWriter jarWriter = new ParallelJarWriter(runProgress);
+            jarWriter.setCompress(!jarConfig.isStoreUncompressed());
+            jarWriter.setReproducible(jarConfig.isReproducible());
+            if (jarConfig.isIncremental() && outFile.isFile() && indexFile.isFile())
+            {
+                try
+                {
+                    previousJar = new RawZipReader(outFile);
+                    jarWriter.setPrevious(previousJar, JarIndex.load(indexFile));
+                    targetFile = new File(outFile.getParentFile(), outFile.getName() + ".tmp");
+                    runProgress.markMessage("Incremental build based on " + outFile.getName());
+                }
+                catch (IOException e)
+                {
+                    runProgress.markMessage("Previous jar can not be reused: " + e.getMessage());
+                }
+            }
+
+            final byte[] manifestBytes;
+            if (jarConfig.isReproducible())
+            {
+                manifestBytes = ManifestWriter.toBytes(manifest);
+            }
+            else
+            {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                manifest.write(out);
+                manifestBytes = out.toByteArray();
+            }
+            jarWriter.addContent(JarFile.MANIFEST_NAME, manifestBytes, System.currentTimeMillis());
 
             List<String> jarEntries = jarConfig.getJarEntries();
             for (String jarEntry : jarEntries)
             {
                 File entryFile = new File(jarEntry);
-                if (entryFile.isFile())
+                if (entryFile.isFile() && jarConfig.isMergeArchives() && isArchive(entryFile))
                 {
-                    jarFile(jos, entryFile.getAbsolutePath(), entryFile.getParentFile().getAbsolutePath());
+                    final RawZipReader archive = new RawZipReader(entryFile);
+                    mergedArchives.add(archive);
+                    final int merged = jarWriter.addArchive(archive);
+                    runProgress.markMessage("Merging " + merged + " entries from " + entryFile.getName());
+                }
+                else if (entryFile.isFile())
+                {
+                    jarFile(jarWriter, entryFile, entryFile.getParentFile().getAbsolutePath());
                 }
                 else if (entryFile.isDirectory())
                 {
-                    jarDirectory(jos, entryFile.getAbsolutePath(), entryFile.equals(classesDir) ? entryFile.getAbsolutePath() : entryFile.getParentFile().getAbsolutePath());
+                    jarDirectory(jarWriter, entryFile, entryFile.equals(classesDir) ? entryFile.getAbsolutePath() : entryFile.getParentFile().getAbsolutePath());
                 }
             }
+
+            writing = true;
+            final JarStatistics statistics = jarWriter.write(targetFile);
+            writing = false;
+
+            if (previousJar != null)
+            {
+                previousJar.close();
+                previousJar = null;
+            }
+            if (!targetFile.equals(outFile))
+            {
+                replace(outFile, targetFile);
+            }
+
+            if (jarConfig.isIncremental())
+            {
+                jarWriter.getIndex().save(indexFile);
+            }
+            else
+            {
+                indexFile.delete();
+            }
+            runProgress.markMessage(statistics.toText());
+            runProgress.getMetrics().setJarEntries(statistics.getEntries());
+            runProgress.getMetrics().setJarBytes(statistics.getSize());
         }
         catch (IOException e)
         {
             runProgress.markError(e.getMessage());
+            // the index no longer describes the jar
+            indexFile.delete();
+            if (!targetFile.equals(outFile))
+            {
+                targetFile.delete();
+            }
+        }
+        catch (ProcessCanceledException e)
+        {
+            // a previous jar being replaced is left intact, a partially written one is removed
+            if (writing && targetFile.delete())
+            {
+                runProgress.markMessage("Canceled, removed partial jar " + targetFile.getName());
+                if (targetFile.equals(outFile))
+                {
+                    indexFile.delete();
+                }
+            }
+            throw e;
         }
         finally
         {
-            if (jos != null)
+            if (previousJar != null)
+            {
+                mergedArchives.add(previousJar);
+            }
+            for (RawZipReader reader : mergedArchives)
             {
                 try
                 {
-                    jos.close();
+                    reader.close();
                 }
                 catch (IOException e)
                 {
@@ -109,55 +223,60 @@ public class JarTask implements Runnable
             }
         }
     }
-    
-    private void jarDirectory(@NotNull JarOutputStream jos, @NotNull String directoryName, @NotNull String baseDir)
+
+    /**
+     * Replaces <tt>outFile</tt> with <tt>newFile</tt>. The previous jar is only removed once the new one
+     * is in place: renaming over it fails on some platforms and across file systems, in which case the
+     * new jar is copied instead.
+     */
+    private static void replace(@NotNull File outFile, @NotNull File newFile) throws IOException
     {
-        File dirobject = new File(directoryName);
-        if (dirobject.exists())
+        if (newFile.renameTo(outFile))
         {
-            if (dirobject.isDirectory())
-            {
-                File[] fileList = dirobject.listFiles();
-                for (File aFileList : fileList)
-                {
-                    if (aFileList.isDirectory())
-                    {
-                        jarDirectory(jos, aFileList.getAbsolutePath(), baseDir);
-                    }
-                    else if (aFileList.isFile())
-                    {
-                        jarFile(jos, aFileList.getAbsolutePath(), baseDir);
-                    }
-                }
-            }
+            return;
+        }
+        FileUtil.copy(newFile, outFile);
+        if (!newFile.delete())
+        {
+            newFile.deleteOnExit();
         }
     }
 
-    private void jarFile(@NotNull JarOutputStream jos, @NotNull String filePath, @NotNull String baseDir)
+    private static boolean isArchive(@NotNull File file)
     {
-        try
+        final String name = file.getName().toLowerCase();
+        return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+    
+    private void jarDirectory(@NotNull ParallelJarWriter jarWriter, @NotNull File directory, @NotNull String baseDir)
+    {
+        runProgress.checkCanceled();
+        File[] fileList = directory.listFiles();
+        if (fileList == null)
         {
-            FileInputStream fis = new FileInputStream(filePath);
-            BufferedInputStream bis = new BufferedInputStream(fis);
-            String entryName = filePath.substring(baseDir.length()).replace('\\', '/');
-            while (entryName.startsWith("/")) entryName = entryName.substring(1);
-
-            runProgress.markMessage("Adding " + entryName);
-            JarEntry fileEntry = new JarEntry(entryName);
-            jos.putNextEntry(fileEntry);
-            byte[] data = new byte[1024];
-            int byteCount;
-            while ((byteCount = bis.read(data, 0, 1024)) > -1)
-            {
-                jos.write(data, 0, byteCount);
-            }
+            return;
         }
-        catch (IOException e)
+        for (File aFileList : fileList)
         {
-            runProgress.markError(e.getMessage());
+            if (aFileList.isDirectory())
+            {
+                jarDirectory(jarWriter, aFileList, baseDir);
+            }
+            else if (aFileList.isFile())
+            {
+                jarFile(jarWriter, aFileList, baseDir);
+            }
         }
     }
 
+    private void jarFile(@NotNull ParallelJarWriter jarWriter, @NotNull File file, @NotNull String baseDir)
+    {
+        String entryName = file.getAbsolutePath().substring(baseDir.length()).replace('\\', '/');
+        while (entryName.startsWith("/")) entryName = entryName.substring(1);
+
+        jarWriter.addFile(entryName, file);
+    }
+
     @NotNull
     private Manifest createManifest(@Nullable Manifest manifest, @NotNull JarConfig jarConfig, @NotNull Module module)
     {
@@ -177,7 +296,7 @@ public class JarTask implements Runnable
                 for (VirtualFile dependencyJar : virtualFileList)
                 {
                     final String dependencyName = dependencyJar.getName();
-                    runProgress.markMessage("Adding dependency " + dependencyName);
+                    runProgress.markVerbose("Adding dependency " + dependencyName);
                     dependencyFileNames.add(dependencyName);
                 }
                 StringBuilder sb = new StringBuilder();
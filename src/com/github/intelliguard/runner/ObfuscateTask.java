@@ -16,16 +16,27 @@
 
 package com.github.intelliguard.runner;
 
+import com.github.intelliguard.ant.YGuardTaskBuilder;
+import com.github.intelliguard.ant.YGuardTaskCache;
 import com.github.intelliguard.ant.YProject;
-import com.github.intelliguard.ant.YProjectHelper;
+import com.github.intelliguard.facet.AnnotationKeepers;
 import com.github.intelliguard.facet.GuardFacet;
+import com.github.intelliguard.facet.GuardFacetConfiguration;
 import com.github.intelliguard.generator.YGuardGenerator;
+import com.github.intelliguard.model.Keeper;
+import com.github.intelliguard.runner.worker.ObfuscationWorkerClient;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
-import org.apache.tools.ant.ProjectHelper;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by IntelliJ IDEA.
@@ -35,28 +46,177 @@ import java.io.ByteArrayInputStream;
  */
 public class ObfuscateTask implements Runnable
 {
+    // yGuard keeps static state and all in-process runs share its classes, so they run one at a time
+    private static final Lock IN_PROCESS_LOCK = new ReentrantLock();
+    // how often to check for cancellation while waiting for the lock
+    private static final long LOCK_POLL_INTERVAL = 100;
+
     private RunProgress runProgress;
     private GuardFacet guardFacet;
+    private File inFile;
 
-    public ObfuscateTask(@NotNull final RunProgress runProgress, @NotNull final GuardFacet guardFacet)
+    public ObfuscateTask(@NotNull final RunProgress runProgress, @NotNull final GuardFacet guardFacet, @NotNull final File inFile)
     {
         this.runProgress = runProgress;
         this.guardFacet = guardFacet;
+        this.inFile = inFile;
     }
 
     public void run()
     {
-        final String buildXml = YGuardGenerator.generateBuildXml(guardFacet);
+        final RunMetrics metrics = runProgress.getMetrics();
+        final long start = System.currentTimeMillis();
+        metrics.setCacheHit(false);
+        metrics.startHeapSampling();
+        try
+        {
+            obfuscate();
+        }
+        finally
+        {
+            metrics.stopHeapSampling();
+            metrics.setObfuscateMillis(System.currentTimeMillis() - start);
+            metrics.setInJarSize(inFile.length());
+            metrics.setOutJarSize(new File(guardFacet.getConfiguration().outFile).length());
+        }
+    }
+
+    private void obfuscate()
+    {
+        final GuardFacetConfiguration configuration = guardFacet.getConfiguration();
+        final File outFile = new File(configuration.outFile);
+        final File logFile = YGuardGenerator.getLogFile(outFile);
+        final ObfuscationCache cache = ObfuscationCache.getInstance();
+        final List<File> externalClasses = YGuardGenerator.getExternalClasses(guardFacet);
+        final List<Keeper> keepers = AnnotationKeepers.getAllKeepers(guardFacet);
+        runProgress.setText("Obfuscating jar " + inFile.getName());
+
+        String cacheKey = null;
+        if (configuration.cacheSize > 0)
+        {
+            try
+            {
+                cacheKey = cache.computeKey(configuration, inFile, externalClasses, keepers);
+                if (cache.restore(cacheKey, outFile, logFile))
+                {
+                    runProgress.markMessage("Restored " + outFile.getName() + " from obfuscation cache (" + cache.getStatistics() + ")");
+                    runProgress.getMetrics().setCacheHit(true);
+                    return;
+                }
+            }
+            catch (IOException e)
+            {
+                runProgress.markMessage("Obfuscation cache unavailable: " + e.getMessage());
+                cacheKey = null;
+            }
+        }
+
+        runProgress.checkCanceled();
+        try
+        {
+            if (configuration.outOfProcess)
+            {
+                obfuscateOutOfProcess(configuration, outFile, logFile);
+            }
+            else
+            {
+                obfuscateInProcess(configuration, outFile, logFile, externalClasses, keepers);
+            }
+        }
+        catch (ProcessCanceledException e)
+        {
+            outFile.delete();
+            logFile.delete();
+            runProgress.markMessage("Canceled, removed partial output " + outFile.getName());
+            throw e;
+        }
+
+        if (cacheKey != null && runProgress.lookingGood())
+        {
+            try
+            {
+                cache.store(cacheKey, outFile, logFile, configuration.cacheSize * 1024L * 1024L);
+                runProgress.markMessage("Stored " + outFile.getName() + " in obfuscation cache (" + cache.getStatistics() + ")");
+            }
+            catch (IOException e)
+            {
+                runProgress.markMessage("Could not store result in obfuscation cache: " + e.getMessage());
+            }
+        }
+    }
+
+    private void obfuscateInProcess(@NotNull GuardFacetConfiguration configuration, @NotNull File outFile, @NotNull File logFile, @NotNull List<File> externalClasses,
+                                    @NotNull List<Keeper> keepers)
+    {
         final Project project = new YProject(runProgress);
-        final ProjectHelper projectHelper = new YProjectHelper();
-        projectHelper.parse(project, new ByteArrayInputStream(buildXml.getBytes()));
         project.init();
+        try
+        {
+            YGuardTaskCache.defineTask(project, new File(configuration.yGuardJar));
+        }
+        catch (ClassNotFoundException e)
+        {
+            runProgress.markError("Could not load yGuard task: " + e.getMessage());
+            return;
+        }
+        catch (MalformedURLException e)
+        {
+            runProgress.markError("Could not load yGuard task: " + e.getMessage());
+            return;
+        }
+        new YGuardTaskBuilder(project).build(configuration, inFile, outFile, logFile, externalClasses, keepers);
 
+        lockInProcess();
         try
         {
             project.executeTarget(YGuardGenerator.YGUARD_TARGET_NAME);
         }
         catch (BuildException e)
+        {
+            if (runProgress.isCanceled())
+            {
+                // aborted by the build listener
+                throw new ProcessCanceledException();
+            }
+            runProgress.markError(e.getMessage());
+        }
+        finally
+        {
+            IN_PROCESS_LOCK.unlock();
+        }
+    }
+
+    private void lockInProcess()
+    {
+        try
+        {
+            if (IN_PROCESS_LOCK.tryLock())
+            {
+                return;
+            }
+            runProgress.setText("Waiting for another obfuscation to finish");
+            while (!IN_PROCESS_LOCK.tryLock(LOCK_POLL_INTERVAL, TimeUnit.MILLISECONDS))
+            {
+                runProgress.checkCanceled();
+            }
+            runProgress.setText("Obfuscating jar " + inFile.getName());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        }
+    }
+
+    private void obfuscateOutOfProcess(@NotNull GuardFacetConfiguration configuration, @NotNull File outFile, @NotNull File logFile)
+    {
+        // the job has to cross the process boundary, so here the build file is the natural form
+        final String buildXml = YGuardGenerator.generateBuildXml(guardFacet, inFile.getAbsolutePath(), outFile.getAbsolutePath(), logFile.getAbsolutePath(), false);
+        try
+        {
+            ObfuscationWorkerClient.getInstance().obfuscate(runProgress, new File(configuration.yGuardJar).getAbsolutePath(), buildXml, configuration.workerHeapSize);
+        }
+        catch (IOException e)
         {
             runProgress.markError(e.getMessage());
         }
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.github.intelliguard.GuardProjectComponent;
+import com.github.intelliguard.util.ObfuscatorUtils;
+import com.github.intelliguard.util.UiUtils;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompileStatusNotification;
+import com.intellij.openapi.compiler.CompilerManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Obfuscates several modules in one background task. All modules are compiled with a single make,
+ * then the jar and obfuscation stages of up to <tt>parallelism</tt> modules run at the same time. yGuard
+ * itself only runs in parallel in worker processes, in-process obfuscation takes one module at a time.
+ * Every module reports to its own {@link RunProgress}; a summary is written when all modules are done.
+ */
+public class ObfuscationBatch
+{
+    public enum Result
+    {
+        SUCCEEDED, FAILED, CANCELED
+    }
+
+    private final Project project;
+    private final int parallelism;
+    private final ProgressInfoReceiver summaryReceiver;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private long startTime;
+    private long makeMillis = -1;
+
+    private static class Entry
+    {
+        private final Module module;
+        private final RunProgress runProgress;
+        private final Runnable jarTask;
+        private final Runnable obfuscateTask;
+        private final File inJar;
+        private final boolean scratch;
+        private String skipReason;
+        private Result result;
+        // if this batch has started the run of the module, see GuardProjectComponent.startRun
+        private boolean running;
+
+        private Entry(@NotNull Module module, @Nullable RunProgress runProgress, @Nullable Runnable jarTask, @Nullable Runnable obfuscateTask,
+                      @Nullable File inJar, boolean scratch)
+        {
+            this.module = module;
+            this.runProgress = runProgress;
+            this.jarTask = jarTask;
+            this.obfuscateTask = obfuscateTask;
+            this.inJar = inJar;
+            this.scratch = scratch;
+        }
+
+        private void run()
+        {
+            try
+            {
+                jarTask.run();
+                if (runProgress.lookingGood())
+                {
+                    obfuscateTask.run();
+                }
+                result = runProgress.lookingGood() ? Result.SUCCEEDED : Result.FAILED;
+            }
+            catch (ProcessCanceledException e)
+            {
+                result = Result.CANCELED;
+            }
+            catch (RuntimeException e)
+            {
+                runProgress.markError(e.toString());
+                result = Result.FAILED;
+            }
+            finally
+            {
+                deleteScratch();
+            }
+        }
+
+        private void deleteScratch()
+        {
+            if (scratch && inJar != null)
+            {
+                ObfuscatorUtils.deleteScratchJar(inJar);
+            }
+        }
+    }
+
+    /**
+     * Progress of a single module. It is canceled together with the batch.
+     */
+    private static class ModuleProgressIndicator extends ProgressIndicatorBase
+    {
+        private final ProgressIndicator batchIndicator;
+
+        private ModuleProgressIndicator(@NotNull ProgressIndicator batchIndicator)
+        {
+            this.batchIndicator = batchIndicator;
+        }
+
+        @Override
+        public boolean isCanceled()
+        {
+            return super.isCanceled() || batchIndicator.isCanceled();
+        }
+    }
+
+    public ObfuscationBatch(@NotNull Project project, int parallelism, @NotNull ProgressInfoReceiver summaryReceiver)
+    {
+        this.project = project;
+        this.parallelism = Math.max(1, parallelism);
+        this.summaryReceiver = summaryReceiver;
+    }
+
+    /**
+     * Adds a module to the batch.
+     * @param module the module
+     * @param runProgress progress of the module
+     * @param jarTask builds <tt>inJar</tt>
+     * @param obfuscateTask obfuscates <tt>inJar</tt>
+     * @param inJar the intermediate jar
+     * @param scratch if <tt>inJar</tt> is a scratch file which should be deleted when the module is done
+     */
+    public void add(@NotNull Module module, @NotNull RunProgress runProgress, @NotNull Runnable jarTask, @NotNull Runnable obfuscateTask,
+                    @NotNull File inJar, boolean scratch)
+    {
+        entries.add(new Entry(module, runProgress, jarTask, obfuscateTask, inJar, scratch));
+    }
+
+    /**
+     * Adds a module which can not be obfuscated. It is reported as failed in the summary.
+     * @param module the module
+     * @param reason why the module is skipped
+     */
+    public void skip(@NotNull Module module, @NotNull String reason)
+    {
+        final Entry entry = new Entry(module, null, null, null, null, false);
+        entry.skipReason = reason;
+        entry.result = Result.FAILED;
+        entries.add(entry);
+    }
+
+    /**
+     * Starts the batch. Must be called from the event dispatch thread. Modules with another run in
+     * progress are skipped.
+     * @param executeMake if the modules should be compiled before the jars are built
+     */
+    public void start(boolean executeMake)
+    {
+        startTime = System.currentTimeMillis();
+        final GuardProjectComponent projectComponent = project.getComponent(GuardProjectComponent.class);
+        final List<Module> modules = new ArrayList<Module>();
+        for (Entry entry : entries)
+        {
+            if (entry.skipReason == null)
+            {
+                entry.running = projectComponent.startRun(entry.module);
+                if (!entry.running)
+                {
+                    entry.deleteScratch();
+                    entry.skipReason = "Obfuscation of the module is already running";
+                    entry.result = Result.FAILED;
+                }
+            }
+            if (entry.skipReason != null)
+            {
+                summaryReceiver.info(MessageFormat.format("[ERROR] {0}: {1}", entry.module.getName(), entry.skipReason));
+            }
+            else
+            {
+                modules.add(entry.module);
+            }
+        }
+        if (modules.isEmpty())
+        {
+            finished();
+            return;
+        }
+        if (!executeMake)
+        {
+            runInBackground(modules.size());
+            return;
+        }
+        CompilerManager.getInstance(project).make(project, modules.toArray(new Module[modules.size()]), new CompileStatusNotification()
+        {
+            public void finished(boolean aborted, int errors, int warnings, CompileContext compileContext)
+            {
+                makeMillis = System.currentTimeMillis() - startTime;
+                if (errors == 0 && !aborted)
+                {
+                    runInBackground(modules.size());
+                    return;
+                }
+                for (Entry entry : entries)
+                {
+                    if (entry.skipReason == null)
+                    {
+                        entry.deleteScratch();
+                    }
+                }
+                finishRuns();
+                if (aborted)
+                {
+                    UiUtils.showInfoBallon(project, "Obfuscation canceled");
+                }
+                else
+                {
+                    summaryReceiver.info("[ERROR] Obfuscation aborted. Compilation errors: " + errors);
+                    UiUtils.showErrorBallon(project, "Obfuscation aborted. Compilation errors: " + errors);
+                }
+            }
+        });
+    }
+
+    private void runInBackground(final int moduleCount)
+    {
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Obfuscating " + moduleCount + " modules", true)
+        {
+            public void run(@NotNull final ProgressIndicator indicator)
+            {
+                indicator.setIndeterminate(false);
+                indicator.setFraction(0);
+                final AtomicInteger done = new AtomicInteger();
+                final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, moduleCount), new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r)
+                    {
+                        final Thread thread = new Thread(r, "IntelliGuard batch " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+                for (final Entry entry : entries)
+                {
+                    if (entry.skipReason != null)
+                    {
+                        continue;
+                    }
+                    executor.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            if (indicator.isCanceled())
+                            {
+                                entry.deleteScratch();
+                                entry.result = Result.CANCELED;
+                                return;
+                            }
+                            indicator.setText2(entry.module.getName());
+                            try
+                            {
+                                ProgressManager.getInstance().runProcess(new Runnable()
+                                {
+                                    public void run()
+                                    {
+                                        entry.run();
+                                    }
+                                }, new ModuleProgressIndicator(indicator));
+                            }
+                            catch (ProcessCanceledException e)
+                            {
+                                entry.result = Result.CANCELED;
+                            }
+                            finally
+                            {
+                                recordMetrics(entry);
+                                indicator.setFraction((double) done.incrementAndGet() / moduleCount);
+                            }
+                        }
+                    });
+                }
+                executor.shutdown();
+                try
+                {
+                    // the module tasks watch the batch indicator themselves, so this only waits for them
+                    while (!executor.awaitTermination(100, TimeUnit.MILLISECONDS))
+                    {
+                        indicator.setText(MessageFormat.format("Obfuscating modules, {0} of {1} done", done.get(), moduleCount));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    executor.shutdownNow();
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onSuccess()
+            {
+                finished();
+            }
+
+            @Override
+            public void onCancel()
+            {
+                finished();
+            }
+        });
+    }
+
+    private void recordMetrics(@NotNull Entry entry)
+    {
+        if (entry.result == Result.CANCELED)
+        {
+            return;
+        }
+        final RunMetrics metrics = entry.runProgress.getMetrics();
+        // the modules are compiled together, every module gets the duration of the shared make
+        metrics.setMakeMillis(makeMillis);
+        metrics.setSucceeded(entry.result == Result.SUCCEEDED);
+        project.getComponent(GuardProjectComponent.class).addRunMetrics(entry.module.getName(), metrics);
+    }
+
+    private void finishRuns()
+    {
+        final GuardProjectComponent projectComponent = project.getComponent(GuardProjectComponent.class);
+        for (Entry entry : entries)
+        {
+            if (entry.running)
+            {
+                projectComponent.finishRun(entry.module);
+                entry.running = false;
+            }
+        }
+    }
+
+    private void finished()
+    {
+        finishRuns();
+        final List<String> failed = new ArrayList<String>();
+        final List<String> canceled = new ArrayList<String>();
+        int succeeded = 0;
+        for (Entry entry : entries)
+        {
+            if (entry.result == Result.SUCCEEDED)
+            {
+                succeeded++;
+            }
+            else if (entry.result == Result.FAILED)
+            {
+                failed.add(entry.module.getName());
+            }
+            else
+            {
+                canceled.add(entry.module.getName());
+            }
+        }
+
+        final StringBuilder summary = new StringBuilder(MessageFormat.format("Obfuscated {0} of {1} modules in {2} s",
+                succeeded, entries.size(), (System.currentTimeMillis() - startTime) / 1000));
+        if (!failed.isEmpty())
+        {
+            summary.append(". Failed: ").append(join(failed));
+        }
+        if (!canceled.isEmpty())
+        {
+            summary.append(". Canceled: ").append(join(canceled));
+        }
+        summaryReceiver.info(summary.toString());
+        if (failed.isEmpty() && canceled.isEmpty())
+        {
+            UiUtils.showInfoBallon(project, summary.toString());
+        }
+        else
+        {
+            UiUtils.showErrorBallon(project, summary.toString());
+        }
+    }
+
+    @NotNull
+    private static String join(@NotNull List<String> names)
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (String name : names)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.github.intelliguard.facet.GuardFacetConfiguration;
+import com.github.intelliguard.model.Keeper;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Content addressed cache of obfuscation results. The key is a digest over everything that affects
+ * the obfuscated jar: the entries of the input jar, the yGuard configuration, the yGuard archive and the external
+ * class path. Entries are evicted least recently used first when the cache grows beyond its size cap.
+ */
+public class ObfuscationCache
+{
+    private static final String VERSION = "3";
+    private static final String OUT_JAR = "out.jar";
+    private static final String LOG_FILE = "log.xml";
+    private static final ObfuscationCache instance = new ObfuscationCache(new File(PathManager.getSystemPath(), "intelliguard/cache"));
+
+    private final File cacheDir;
+    private int hits;
+    private int misses;
+
+    public ObfuscationCache(@NotNull File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+    }
+
+    public static ObfuscationCache getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Computes the cache key for obfuscating <tt>inFile</tt> with <tt>configuration</tt>. The jar
+     * paths are not part of the key, so it does not depend on where the jars are located. The input jar
+     * is keyed on its entry names and uncompressed contents, so time stamps and entry order written by
+     * a rebuild of unchanged classes do not change the key.
+     * @param configuration the facet configuration
+     * @param inFile the input jar
+     * @param externalClasses the external classes passed to yGuard
+     * @param keepers the configured and annotation keepers
+     * @return a hex digest
+     * @throws IOException if the input jar or yGuard archive can not be read
+     */
+    @NotNull
+    public String computeKey(@NotNull GuardFacetConfiguration configuration, @NotNull File inFile, @NotNull List<File> externalClasses,
+                             @NotNull Collection<Keeper> keepers) throws IOException
+    {
+        final MessageDigest digest = createDigest();
+        update(digest, VERSION);
+        updateWithJarEntries(digest, inFile);
+
+        // every option that ends up in the yGuard task, see YGuardTaskBuilder
+        update(digest, configuration.mainclass);
+        update(digest, configuration.conservemanifest, configuration.replaceClassNameStrings, configuration.errorChecking,
+                configuration.sourcefile, configuration.linenumbertable, configuration.localvariabletable, configuration.localvariabletypetable,
+                configuration.runtimevisibleannotations, configuration.runtimevisibleparameterannotations,
+                configuration.runtimeinvisibleannotations, configuration.runtimeinvisibleparameterannotations);
+        for (Keeper keeper : keepers)
+        {
+            update(digest, keeper.getType().getName());
+            update(digest, keeper.getName());
+            update(digest, keeper.getClazz());
+        }
+
+        if (configuration.yGuardJar != null)
+        {
+            updateWithFile(digest, new File(configuration.yGuardJar));
+        }
+
+        for (File file : externalClasses)
+        {
+            update(digest, file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified());
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Restores a cached result.
+     * @param key the cache key
+     * @param outFile where to restore the obfuscated jar
+     * @param logFile where to restore the yGuard log
+     * @return <tt>true</tt> on a cache hit
+     * @throws IOException if the cached result could not be copied
+     */
+    public synchronized boolean restore(@NotNull String key, @NotNull File outFile, @NotNull File logFile) throws IOException
+    {
+        final File entryDir = new File(cacheDir, key);
+        final File cachedJar = new File(entryDir, OUT_JAR);
+        if (!cachedJar.isFile())
+        {
+            misses++;
+            return false;
+        }
+        FileUtil.copy(cachedJar, outFile);
+        final File cachedLog = new File(entryDir, LOG_FILE);
+        if (cachedLog.isFile())
+        {
+            FileUtil.copy(cachedLog, logFile);
+        }
+        // the directory time stamp is the LRU order
+        entryDir.setLastModified(System.currentTimeMillis());
+        hits++;
+        return true;
+    }
+
+    /**
+     * Stores a result and evicts least recently used entries until the cache fits within <tt>maxSize</tt>.
+     * @param key the cache key
+     * @param outFile the obfuscated jar
+     * @param logFile the yGuard log
+     * @param maxSize size cap in bytes
+     * @throws IOException if the result could not be copied
+     */
+    public synchronized void store(@NotNull String key, @NotNull File outFile, @NotNull File logFile, long maxSize) throws IOException
+    {
+        if (outFile.length() > maxSize)
+        {
+            return;
+        }
+        final File tempDir = new File(cacheDir, key + ".tmp");
+        FileUtil.delete(tempDir);
+        if (!tempDir.mkdirs())
+        {
+            throw new IOException("Could not create " + tempDir.getPath());
+        }
+        FileUtil.copy(outFile, new File(tempDir, OUT_JAR));
+        if (logFile.isFile())
+        {
+            FileUtil.copy(logFile, new File(tempDir, LOG_FILE));
+        }
+        final File entryDir = new File(cacheDir, key);
+        FileUtil.delete(entryDir);
+        if (!tempDir.renameTo(entryDir))
+        {
+            FileUtil.delete(tempDir);
+            throw new IOException("Could not create " + entryDir.getPath());
+        }
+        evict(maxSize);
+    }
+
+    private void evict(long maxSize)
+    {
+        final File[] entries = cacheDir.listFiles();
+        if (entries == null)
+        {
+            return;
+        }
+        Arrays.sort(entries, new Comparator<File>()
+        {
+            public int compare(File o1, File o2)
+            {
+                final long l1 = o1.lastModified();
+                final long l2 = o2.lastModified();
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        long total = 0;
+        final List<Long> sizes = new ArrayList<Long>(entries.length);
+        for (File entry : entries)
+        {
+            final long size = sizeOf(entry);
+            sizes.add(size);
+            total += size;
+        }
+        for (int i = 0; i < entries.length && total > maxSize; i++)
+        {
+            FileUtil.delete(entries[i]);
+            total -= sizes.get(i);
+        }
+    }
+
+    public synchronized void clear()
+    {
+        FileUtil.delete(cacheDir);
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized String getStatistics()
+    {
+        return MessageFormat.format("hits: {0}, misses: {1}", hits, misses);
+    }
+
+    private static long sizeOf(@NotNull File file)
+    {
+        if (file.isFile())
+        {
+            return file.length();
+        }
+        long size = 0;
+        final File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                size += sizeOf(child);
+            }
+        }
+        return size;
+    }
+
+    @NotNull
+    private static MessageDigest createDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(@NotNull MessageDigest digest, @Nullable String text)
+    {
+        if (text != null)
+        {
+            try
+            {
+                digest.update(text.getBytes("UTF-8"));
+            }
+            catch (IOException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void update(@NotNull MessageDigest digest, boolean... flags)
+    {
+        for (boolean flag : flags)
+        {
+            digest.update((byte) (flag ? 1 : 0));
+        }
+        digest.update((byte) 0xFF);
+    }
+
+    private static void updateWithFile(@NotNull MessageDigest digest, @NotNull File file) throws IOException
+    {
+        final InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void updateWithJarEntries(@NotNull MessageDigest digest, @NotNull File file) throws IOException
+    {
+        final ZipFile zipFile = new ZipFile(file);
+        try
+        {
+            final List<String> names = new ArrayList<String>();
+            final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements())
+            {
+                final ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory())
+                {
+                    names.add(entry.getName());
+                }
+            }
+            Collections.sort(names);
+
+            final byte[] buffer = new byte[64 * 1024];
+            for (String name : names)
+            {
+                update(digest, name);
+                final InputStream in = zipFile.getInputStream(zipFile.getEntry(name));
+                try
+                {
+                    int read;
+                    while ((read = in.read(buffer)) != -1)
+                    {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+                finally
+                {
+                    in.close();
+                }
+                digest.update((byte) 0);
+            }
+        }
+        finally
+        {
+            zipFile.close();
+        }
+        digest.update((byte) 0xFF);
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes)
+    {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes)
+        {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
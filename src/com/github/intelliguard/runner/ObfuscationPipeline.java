@@ -0,0 +1,249 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.github.intelliguard.GuardProjectComponent;
+import com.github.intelliguard.util.ObfuscatorUtils;
+import com.github.intelliguard.util.UiUtils;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompileStatusNotification;
+import com.intellij.openapi.compiler.CompilerManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.event.HyperlinkEvent;
+import javax.swing.event.HyperlinkListener;
+import java.io.File;
+
+/**
+ * Runs make, jar and obfuscation as a chain of background tasks so the IDE stays usable while
+ * they execute. Each stage reports in the status bar. When a stage fails, the error balloon offers
+ * a link that runs the failed stage again and continues the chain from there.
+ */
+public class ObfuscationPipeline
+{
+    public enum Stage
+    {
+        MAKE, JAR, OBFUSCATE
+    }
+
+    private static final String RETRY_LINK = "retry";
+
+    private final Module module;
+    private final RunProgress runProgress;
+    private final Runnable jarTask;
+    private final Runnable obfuscateTask;
+    private final File inJar;
+    private final File outJar;
+    private final boolean scratch;
+
+    /**
+     * @param module the module to obfuscate
+     * @param runProgress progress shared by the stages
+     * @param jarTask builds <tt>inJar</tt>
+     * @param obfuscateTask obfuscates <tt>inJar</tt> into <tt>outJar</tt>
+     * @param inJar the intermediate jar
+     * @param outJar the obfuscated jar
+     * @param scratch if <tt>inJar</tt> is a scratch file which should be deleted when the pipeline is done
+     */
+    public ObfuscationPipeline(@NotNull Module module, @NotNull RunProgress runProgress, @NotNull Runnable jarTask, @NotNull Runnable obfuscateTask,
+                               @NotNull File inJar, @NotNull File outJar, boolean scratch)
+    {
+        this.module = module;
+        this.runProgress = runProgress;
+        this.jarTask = jarTask;
+        this.obfuscateTask = obfuscateTask;
+        this.inJar = inJar;
+        this.outJar = outJar;
+        this.scratch = scratch;
+    }
+
+    /**
+     * Starts the pipeline, unless another run of the module is in progress. Must be called from the
+     * event dispatch thread.
+     * @param executeMake if the module should be compiled before the jar is built
+     */
+    public void start(boolean executeMake)
+    {
+        if (!startRun())
+        {
+            deleteScratch();
+            return;
+        }
+        runStage(executeMake ? Stage.MAKE : Stage.JAR);
+    }
+
+    private boolean startRun()
+    {
+        if (!getProjectComponent().startRun(module))
+        {
+            UiUtils.showErrorBallon(module.getProject(), "Obfuscation of module " + module.getName() + " is already running");
+            return false;
+        }
+        return true;
+    }
+
+    @NotNull
+    private GuardProjectComponent getProjectComponent()
+    {
+        return module.getProject().getComponent(GuardProjectComponent.class);
+    }
+
+    private void runStage(@NotNull final Stage stage)
+    {
+        runProgress.reset();
+        switch (stage)
+        {
+            case MAKE:
+                final Project project = module.getProject();
+                final long start = System.currentTimeMillis();
+                CompilerManager.getInstance(project).make(project, new Module[] { module }, new CompileStatusNotification()
+                {
+                    public void finished(boolean aborted, int errors, int warnings, CompileContext compileContext)
+                    {
+                        runProgress.getMetrics().setMakeMillis(System.currentTimeMillis() - start);
+                        if (aborted)
+                        {
+                            canceled();
+                        }
+                        else if (errors == 0)
+                        {
+                            runStage(Stage.JAR);
+                        }
+                        else
+                        {
+                            runProgress.markError("Obfuscation aborted. Compilation errors: " + errors);
+                            failed(stage, "Obfuscation aborted. Compilation errors: " + errors);
+                        }
+                    }
+                });
+                break;
+            case JAR:
+                runInBackground(stage, "Building jar " + inJar.getName(), jarTask, "Error building jar " + inJar.getAbsolutePath());
+                break;
+            case OBFUSCATE:
+                runInBackground(stage, "Obfuscating jar " + inJar.getName(), obfuscateTask, "Error obfuscating jar " + outJar.getAbsolutePath());
+                break;
+        }
+    }
+
+    private void runInBackground(@NotNull final Stage stage, @NotNull String title, @NotNull final Runnable runnable, @NotNull final String errorMessage)
+    {
+        ProgressManager.getInstance().run(new Task.Backgroundable(module.getProject(), title, true)
+        {
+            public void run(@NotNull ProgressIndicator indicator)
+            {
+                try
+                {
+                    runnable.run();
+                }
+                catch (ProcessCanceledException e)
+                {
+                    // must reach the progress manager so that onCancel is called instead of onSuccess
+                    throw e;
+                }
+                catch (Throwable t)
+                {
+                    // every other outcome must reach onSuccess, which ends the run of the module
+                    runProgress.markError(t.toString());
+                }
+            }
+
+            @Override
+            public void onSuccess()
+            {
+                if (!runProgress.lookingGood())
+                {
+                    failed(stage, errorMessage);
+                }
+                else if (stage == Stage.JAR)
+                {
+                    runStage(Stage.OBFUSCATE);
+                }
+                else
+                {
+                    finished();
+                }
+            }
+
+            @Override
+            public void onCancel()
+            {
+                canceled();
+            }
+        });
+    }
+
+    private void finished()
+    {
+        getProjectComponent().finishRun(module);
+        deleteScratch();
+        recordMetrics(true);
+        UiUtils.showInfoBallon(module.getProject(), "Obfuscated jar: " + outJar.getAbsolutePath());
+    }
+
+    private void canceled()
+    {
+        getProjectComponent().finishRun(module);
+        deleteScratch();
+        UiUtils.showInfoBallon(module.getProject(), "Obfuscation canceled");
+    }
+
+    private void failed(@NotNull final Stage stage, @NotNull String errorMessage)
+    {
+        recordMetrics(false);
+        getProjectComponent().finishRun(module);
+        // the retry link may never be clicked, so a scratch jar is not kept around for it but rebuilt on retry
+        deleteScratch();
+        final Stage retryStage = scratch && stage == Stage.OBFUSCATE ? Stage.JAR : stage;
+        UiUtils.showErrorBallon(module.getProject(), errorMessage + " (<a href=\"" + RETRY_LINK + "\">Retry</a>)", new HyperlinkListener()
+        {
+            private boolean retried;
+
+            public void hyperlinkUpdate(HyperlinkEvent e)
+            {
+                if (e.getEventType() == HyperlinkEvent.EventType.ACTIVATED && RETRY_LINK.equals(e.getDescription()) && !retried)
+                {
+                    retried = true;
+                    if (startRun())
+                    {
+                        runStage(retryStage);
+                    }
+                }
+            }
+        });
+    }
+
+    private void recordMetrics(boolean succeeded)
+    {
+        runProgress.getMetrics().setSucceeded(succeeded);
+        getProjectComponent().addRunMetrics(module.getName(), runProgress.getMetrics());
+    }
+
+    private void deleteScratch()
+    {
+        if (scratch)
+        {
+            ObfuscatorUtils.deleteScratchJar(inJar);
+        }
+    }
+}
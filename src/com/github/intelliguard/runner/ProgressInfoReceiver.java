@@ -24,5 +24,15 @@ package com.github.intelliguard.runner;
  */
 public interface ProgressInfoReceiver
 {
+    public enum Level
+    {
+        /** per-entry chatter, hidden unless asked for */
+        VERBOSE,
+        INFO,
+        ERROR
+    }
+
     public void info(String info);
+
+    public void log(Level level, String text);
 }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import com.intellij.concurrency.JobScheduler;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and sizes recorded during one obfuscation run. Durations are in milliseconds and are
+ * <tt>-1</tt> for stages that did not run.
+ */
+public class RunMetrics implements Cloneable
+{
+    private String moduleName;
+    private long startTime = System.currentTimeMillis();
+    private boolean succeeded;
+    private long makeMillis = -1;
+    private long jarMillis = -1;
+    private int jarEntries;
+    private long jarBytes;
+    private long obfuscateMillis = -1;
+    private boolean cacheHit;
+    private long inJarSize;
+    private long outJarSize;
+    private long peakHeapDelta;
+    private boolean heapShared;
+
+    // the heap is process wide, so overlapping samplings can not be told apart
+    private static final Object HEAP_LOCK = new Object();
+    private static final long SAMPLE_INTERVAL = 100;
+    private static int activeSamplings;
+    private static int startedSamplings;
+    private static long sampledPeak;
+    @Nullable
+    private static ScheduledFuture<?> sampler;
+
+    private long heapBaseline;
+    private int samplingStart;
+
+    @Nullable
+    public String getModuleName()
+    {
+        return moduleName;
+    }
+
+    public void setModuleName(@Nullable String moduleName)
+    {
+        this.moduleName = moduleName;
+    }
+
+    public long getStartTime()
+    {
+        return startTime;
+    }
+
+    public boolean isSucceeded()
+    {
+        return succeeded;
+    }
+
+    public void setSucceeded(boolean succeeded)
+    {
+        this.succeeded = succeeded;
+    }
+
+    public long getMakeMillis()
+    {
+        return makeMillis;
+    }
+
+    public void setMakeMillis(long makeMillis)
+    {
+        this.makeMillis = makeMillis;
+    }
+
+    public long getJarMillis()
+    {
+        return jarMillis;
+    }
+
+    public void setJarMillis(long jarMillis)
+    {
+        this.jarMillis = jarMillis;
+    }
+
+    public int getJarEntries()
+    {
+        return jarEntries;
+    }
+
+    public void setJarEntries(int jarEntries)
+    {
+        this.jarEntries = jarEntries;
+    }
+
+    public long getJarBytes()
+    {
+        return jarBytes;
+    }
+
+    public void setJarBytes(long jarBytes)
+    {
+        this.jarBytes = jarBytes;
+    }
+
+    public long getObfuscateMillis()
+    {
+        return obfuscateMillis;
+    }
+
+    public void setObfuscateMillis(long obfuscateMillis)
+    {
+        this.obfuscateMillis = obfuscateMillis;
+    }
+
+    public boolean isCacheHit()
+    {
+        return cacheHit;
+    }
+
+    public void setCacheHit(boolean cacheHit)
+    {
+        this.cacheHit = cacheHit;
+    }
+
+    public long getInJarSize()
+    {
+        return inJarSize;
+    }
+
+    public void setInJarSize(long inJarSize)
+    {
+        this.inJarSize = inJarSize;
+    }
+
+    public long getOutJarSize()
+    {
+        return outJarSize;
+    }
+
+    public void setOutJarSize(long outJarSize)
+    {
+        this.outJarSize = outJarSize;
+    }
+
+    /**
+     * @return a copy which is not affected by later changes to this instance
+     */
+    public RunMetrics copy()
+    {
+        try
+        {
+            return (RunMetrics) clone();
+        }
+        catch (CloneNotSupportedException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the highest heap usage of the IDE process sampled during a stage, minus the heap usage when
+     * the stage started, or <tt>-1</tt> if the stage overlapped with another sampled stage, e.g. of a
+     * module obfuscated in parallel, so that the process wide value can not be attributed to this run
+     */
+    public long getPeakHeapDelta()
+    {
+        return heapShared ? -1 : peakHeapDelta;
+    }
+
+    /**
+     * Starts sampling the heap usage of the IDE process every {@value #SAMPLE_INTERVAL} ms for a stage.
+     * Work running at the same time that is not sampled, e.g. indexing, is still included.
+     */
+    public void startHeapSampling()
+    {
+        synchronized (HEAP_LOCK)
+        {
+            samplingStart = ++startedSamplings;
+            if (++activeSamplings > 1)
+            {
+                heapShared = true;
+                return;
+            }
+            heapBaseline = usedHeap();
+            sampledPeak = heapBaseline;
+            sampler = JobScheduler.getScheduler().scheduleWithFixedDelay(new Runnable()
+            {
+                public void run()
+                {
+                    sampleHeap();
+                }
+            }, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ends a measurement started with {@link #startHeapSampling()}.
+     */
+    public void stopHeapSampling()
+    {
+        synchronized (HEAP_LOCK)
+        {
+            sampleHeap();
+            if (--activeSamplings == 0 && sampler != null)
+            {
+                sampler.cancel(false);
+                sampler = null;
+            }
+            if (startedSamplings != samplingStart)
+            {
+                // another sampling started while this one was running
+                heapShared = true;
+            }
+            if (heapShared)
+            {
+                return;
+            }
+            peakHeapDelta = Math.max(peakHeapDelta, sampledPeak - heapBaseline);
+        }
+    }
+
+    private static void sampleHeap()
+    {
+        long used = usedHeap();
+        synchronized (HEAP_LOCK)
+        {
+            sampledPeak = Math.max(sampledPeak, used);
+        }
+    }
+
+    private static long usedHeap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rolling history of {@link RunMetrics}, keeping the latest runs of every module.
+ */
+public class RunMetricsHistory
+{
+    public static final int MAX_RUNS_PER_MODULE = 20;
+
+    public static final String[] COLUMNS = {
+            "Time", "Module", "Result", "Make ms", "Jar ms", "Jar entries", "Jar bytes", "Obfuscate ms", "Cache hit",
+            "In jar bytes", "Out jar bytes", "IDE peak heap delta"
+    };
+
+    private static final String[] JSON_NAMES = {
+            "time", "module", "result", "makeMillis", "jarMillis", "jarEntries", "jarBytes", "obfuscateMillis", "cacheHit",
+            "inJarSize", "outJarSize", "peakHeapDelta"
+    };
+
+    private final Map<String, LinkedList<RunMetrics>> runsByModule = new HashMap<String, LinkedList<RunMetrics>>();
+
+    public synchronized void add(@NotNull String moduleName, @NotNull RunMetrics metrics)
+    {
+        metrics.setModuleName(moduleName);
+        LinkedList<RunMetrics> runs = runsByModule.get(moduleName);
+        if (runs == null)
+        {
+            runs = new LinkedList<RunMetrics>();
+            runsByModule.put(moduleName, runs);
+        }
+        runs.addLast(metrics);
+        while (runs.size() > MAX_RUNS_PER_MODULE)
+        {
+            runs.removeFirst();
+        }
+    }
+
+    /**
+     * @return all recorded runs, oldest first
+     */
+    @NotNull
+    public synchronized List<RunMetrics> getRuns()
+    {
+        final List<RunMetrics> all = new ArrayList<RunMetrics>();
+        for (List<RunMetrics> runs : runsByModule.values())
+        {
+            all.addAll(runs);
+        }
+        Collections.sort(all, new Comparator<RunMetrics>()
+        {
+            public int compare(RunMetrics o1, RunMetrics o2)
+            {
+                return o1.getStartTime() < o2.getStartTime() ? -1 : (o1.getStartTime() == o2.getStartTime() ? 0 : 1);
+            }
+        });
+        return all;
+    }
+
+    @NotNull
+    public static Object getValue(@NotNull RunMetrics metrics, int column)
+    {
+        switch (column)
+        {
+            case 0:
+                return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(metrics.getStartTime()));
+            case 1:
+                return String.valueOf(metrics.getModuleName());
+            case 2:
+                return metrics.isSucceeded() ? "OK" : "FAILED";
+            case 3:
+                return metrics.getMakeMillis();
+            case 4:
+                return metrics.getJarMillis();
+            case 5:
+                return metrics.getJarEntries();
+            case 6:
+                return metrics.getJarBytes();
+            case 7:
+                return metrics.getObfuscateMillis();
+            case 8:
+                return metrics.isCacheHit();
+            case 9:
+                return metrics.getInJarSize();
+            case 10:
+                return metrics.getOutJarSize();
+            case 11:
+                return metrics.getPeakHeapDelta();
+            default:
+                throw new IndexOutOfBoundsException("column " + column);
+        }
+    }
+
+    @NotNull
+    public String toCsv()
+    {
+        final StringBuilder sb = new StringBuilder();
+        appendCsvRow(sb, COLUMNS);
+        for (RunMetrics metrics : getRuns())
+        {
+            final Object[] values = new Object[COLUMNS.length];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = getValue(metrics, i);
+            }
+            appendCsvRow(sb, values);
+        }
+        return sb.toString();
+    }
+
+    @NotNull
+    public String toJson()
+    {
+        final StringBuilder sb = new StringBuilder("[");
+        final List<RunMetrics> runs = getRuns();
+        for (int row = 0; row < runs.size(); row++)
+        {
+            sb.append(row == 0 ? "\n  {" : ",\n  {");
+            for (int i = 0; i < JSON_NAMES.length; i++)
+            {
+                if (i > 0)
+                {
+                    sb.append(", ");
+                }
+                final Object value = getValue(runs.get(row), i);
+                sb.append('"').append(JSON_NAMES[i]).append("\": ");
+                if (value instanceof String)
+                {
+                    appendJsonString(sb, (String) value);
+                }
+                else
+                {
+                    sb.append(value);
+                }
+            }
+            sb.append('}');
+        }
+        return sb.append("\n]\n").toString();
+    }
+
+    private static void appendCsvRow(@NotNull StringBuilder sb, @NotNull Object[] values)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(',');
+            }
+            final String value = String.valueOf(values[i]);
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0)
+            {
+                sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+            else
+            {
+                sb.append(value);
+            }
+        }
+        sb.append('\n');
+    }
+
+    private static void appendJsonString(@NotNull StringBuilder sb, @NotNull String value)
+    {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                sb.append('\\').append(c);
+            }
+            else if (c < 0x20)
+            {
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
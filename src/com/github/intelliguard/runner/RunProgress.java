@@ -16,8 +16,10 @@
 
 package com.github.intelliguard.runner;
 
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
@@ -30,6 +32,7 @@ public class RunProgress
 {
     private ProgressInfoReceiver infoReceiver;
     private int errors;
+    private final RunMetrics metrics = new RunMetrics();
 
     public RunProgress(@Nullable ProgressInfoReceiver infoReceiver)
     {
@@ -41,7 +44,7 @@ public class RunProgress
         errors++;
         if (errorMessage != null)
         {
-            markMessage("[ERROR] " + errorMessage);
+            mark(ProgressInfoReceiver.Level.ERROR, "[ERROR] " + errorMessage);
         }
     }
 
@@ -50,7 +53,35 @@ public class RunProgress
         return errors == 0;
     }
 
+    @NotNull
+    public RunMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Forgets earlier errors, before a task is run again.
+     */
+    public void reset()
+    {
+        errors = 0;
+    }
+
     public void markMessage(@Nullable String text)
+    {
+        mark(ProgressInfoReceiver.Level.INFO, text);
+    }
+
+    /**
+     * Marks a detail message, such as one line per jar entry, which is hidden by default.
+     * @param text the message
+     */
+    public void markVerbose(@Nullable String text)
+    {
+        mark(ProgressInfoReceiver.Level.VERBOSE, text);
+    }
+
+    private void mark(@NotNull ProgressInfoReceiver.Level level, @Nullable String text)
     {
         if (text == null)
         {
@@ -58,7 +89,7 @@ public class RunProgress
         }
         if (infoReceiver != null)
         {
-            infoReceiver.info(text);
+            infoReceiver.log(level, text);
         }
         ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
         if (progressIndicator != null)
@@ -66,4 +97,43 @@ public class RunProgress
             progressIndicator.setText2(text);
         }
     }
+
+    public void setText(@NotNull String text)
+    {
+        ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
+        if (progressIndicator != null)
+        {
+            progressIndicator.setText(text);
+        }
+    }
+
+    /**
+     * @param fraction the completed part of the current task, from 0 to 1
+     */
+    public void setFraction(double fraction)
+    {
+        ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
+        if (progressIndicator != null)
+        {
+            progressIndicator.setIndeterminate(false);
+            progressIndicator.setFraction(Math.max(0, Math.min(1, fraction)));
+        }
+    }
+
+    public boolean isCanceled()
+    {
+        ProgressIndicator progressIndicator = ProgressManager.getInstance().getProgressIndicator();
+        return progressIndicator != null && progressIndicator.isCanceled();
+    }
+
+    /**
+     * @throws ProcessCanceledException if the user has canceled the current task
+     */
+    public void checkCanceled() throws ProcessCanceledException
+    {
+        if (isCanceled())
+        {
+            throw new ProcessCanceledException();
+        }
+    }
 }
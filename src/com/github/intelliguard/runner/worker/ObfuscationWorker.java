@@ -0,0 +1,184 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner.worker;
+
+import com.github.intelliguard.ant.YGuardTaskCache;
+import com.github.intelliguard.ant.YProjectHelper;
+import com.github.intelliguard.generator.YGuardGenerator;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.SecureRandom;
+
+/**
+ * Main class of the obfuscation worker JVM started by {@link ObfuscationWorkerClient}. It runs only
+ * Ant and yGuard, no IDE classes. The worker serves a single connection from the IDE and runs its
+ * jobs one after the other. The yGuard classes stay loaded between jobs, and the worker exits when
+ * the connection is closed.
+ */
+public class ObfuscationWorker
+{
+    // how long to wait for the IDE to connect after startup
+    private static final int ACCEPT_TIMEOUT = 30 * 1000;
+
+    private final DataOutputStream out;
+
+    private ObfuscationWorker(@NotNull DataOutputStream out)
+    {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName(null));
+        serverSocket.setSoTimeout(ACCEPT_TIMEOUT);
+        final String token = Long.toHexString(new SecureRandom().nextLong());
+        System.out.println(WorkerProtocol.PORT_PREFIX + serverSocket.getLocalPort() + ' ' + token);
+        System.out.flush();
+
+        final Socket socket;
+        try
+        {
+            socket = serverSocket.accept();
+        }
+        finally
+        {
+            serverSocket.close();
+        }
+
+        try
+        {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (!token.equals(WorkerProtocol.readString(in)))
+            {
+                return;
+            }
+            final ObfuscationWorker worker = new ObfuscationWorker(out);
+            while (in.readInt() == WorkerProtocol.JOB)
+            {
+                final String yGuardJar = WorkerProtocol.readString(in);
+                final String buildXml = WorkerProtocol.readString(in);
+                worker.execute(yGuardJar, buildXml);
+            }
+        }
+        catch (EOFException e)
+        {
+            // the IDE closed the connection
+        }
+        finally
+        {
+            socket.close();
+        }
+        System.exit(0);
+    }
+
+    private void execute(@NotNull String yGuardJar, @NotNull String buildXml) throws IOException
+    {
+        try
+        {
+            final Project project = new Project();
+            project.init();
+            project.addBuildListener(new BuildListener()
+            {
+                public void buildStarted(BuildEvent buildEvent)
+                {
+                }
+
+                public void buildFinished(BuildEvent buildEvent)
+                {
+                }
+
+                public void targetStarted(BuildEvent buildEvent)
+                {
+                }
+
+                public void targetFinished(BuildEvent buildEvent)
+                {
+                }
+
+                public void taskStarted(BuildEvent buildEvent)
+                {
+                }
+
+                public void taskFinished(BuildEvent buildEvent)
+                {
+                }
+
+                public void messageLogged(BuildEvent buildEvent)
+                {
+                    final String message = buildEvent.getMessage();
+                    if (message != null)
+                    {
+                        try
+                        {
+                            sendLog(buildEvent.getPriority(), message);
+                        }
+                        catch (IOException e)
+                        {
+                            throw new BuildException(e);
+                        }
+                    }
+                }
+            });
+            YGuardTaskCache.defineTask(project, new File(yGuardJar));
+            new YProjectHelper().parse(project, new ByteArrayInputStream(buildXml.getBytes("UTF-8")));
+            project.executeTarget(YGuardGenerator.YGUARD_TARGET_NAME);
+            send(WorkerProtocol.DONE, null);
+        }
+        catch (IOException e)
+        {
+            throw e;
+        }
+        catch (Throwable t)
+        {
+            send(WorkerProtocol.ERROR, t.getMessage() != null ? t.getMessage() : t.toString());
+        }
+    }
+
+    private synchronized void sendLog(int priority, @NotNull String message) throws IOException
+    {
+        out.writeInt(WorkerProtocol.LOG);
+        out.writeInt(priority);
+        WorkerProtocol.writeString(out, message);
+        out.flush();
+    }
+
+    private synchronized void send(int type, String message) throws IOException
+    {
+        out.writeInt(type);
+        if (message != null)
+        {
+            WorkerProtocol.writeString(out, message);
+        }
+        out.flush();
+    }
+}
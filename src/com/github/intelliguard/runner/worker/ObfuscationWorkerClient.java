@@ -0,0 +1,395 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner.worker;
+
+import com.github.intelliguard.ant.YGuardMilestones;
+import com.github.intelliguard.runner.RunProgress;
+import com.intellij.concurrency.JobScheduler;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.util.PathUtil;
+import org.apache.tools.ant.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs obfuscation jobs in separate worker JVMs with their own heap. Each worker runs one job at a
+ * time, so jobs running concurrently, e.g. modules of a parallel batch, each get a worker of their
+ * own. At most one idle worker is kept for later runs, and it is stopped when it has been idle for
+ * a while. A worker is restarted when it has died or when another heap size is requested, and killed
+ * when its run is canceled.
+ */
+public class ObfuscationWorkerClient
+{
+    private static final Logger LOG = Logger.getInstance("#com.github.intelliguard.runner.worker.ObfuscationWorkerClient");
+    private static final ObfuscationWorkerClient instance = new ObfuscationWorkerClient();
+    // how often to check for cancellation while waiting for the worker
+    private static final long POLL_INTERVAL = 50;
+    // how long an idle worker is kept for the next run
+    private static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    @Nullable
+    private Worker idleWorker;
+    private long idleSince;
+    private final List<Worker> busyWorkers = new ArrayList<Worker>();
+
+    public static ObfuscationWorkerClient getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Runs a yGuard build file in a worker, streaming its log to <tt>runProgress</tt>.
+     * @param runProgress the progress of the run
+     * @param yGuardJar the yGuard archive
+     * @param buildXml a build file without <tt>&lt;taskdef&gt;</tt> for the yGuard task
+     * @param heapSize maximum heap size of the worker in megabytes
+     * @return <tt>true</tt> if obfuscation succeeded, otherwise the error has been marked
+     * @throws IOException if the worker can not be started or has died
+     * @throws ProcessCanceledException if canceled, the worker is killed
+     */
+    public boolean obfuscate(@NotNull RunProgress runProgress, @NotNull String yGuardJar, @NotNull String buildXml, int heapSize) throws IOException
+    {
+        final Worker worker = acquire();
+        try
+        {
+            return worker.obfuscate(runProgress, yGuardJar, buildXml, heapSize);
+        }
+        finally
+        {
+            release(worker);
+        }
+    }
+
+    /**
+     * Stops all workers, including those running a job.
+     */
+    public synchronized void shutdown()
+    {
+        if (idleWorker != null)
+        {
+            idleWorker.shutdown();
+            idleWorker = null;
+        }
+        for (Worker worker : busyWorkers)
+        {
+            worker.shutdown();
+        }
+        busyWorkers.clear();
+    }
+
+    @NotNull
+    private synchronized Worker acquire()
+    {
+        Worker worker = idleWorker;
+        if (worker != null)
+        {
+            // restarted by Worker.obfuscate if the heap size differs
+            idleWorker = null;
+        }
+        else
+        {
+            worker = new Worker();
+        }
+        busyWorkers.add(worker);
+        return worker;
+    }
+
+    private synchronized void release(@NotNull final Worker worker)
+    {
+        // a worker stopped by shutdown() while running is not reused
+        if (!busyWorkers.remove(worker))
+        {
+            return;
+        }
+        // the most recently used worker is kept, it is the most likely to have the heap size of the next run
+        if (idleWorker != null)
+        {
+            idleWorker.shutdown();
+        }
+        idleWorker = worker;
+        final long since = System.currentTimeMillis();
+        idleSince = since;
+        JobScheduler.getScheduler().schedule(new Runnable()
+        {
+            public void run()
+            {
+                stopIdleWorker(worker, since);
+            }
+        }, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopIdleWorker(@NotNull Worker worker, long since)
+    {
+        // not if the worker has been used since
+        if (idleWorker == worker && idleSince == since)
+        {
+            worker.shutdown();
+            idleWorker = null;
+        }
+    }
+
+    /**
+     * Connection to a single worker JVM.
+     */
+    private static class Worker
+    {
+        // volatile, since shutdown() may be called while another thread runs a job
+        @Nullable
+        private volatile Process process;
+        @Nullable
+        private volatile Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+        private int heapSize;
+
+        private boolean obfuscate(@NotNull RunProgress runProgress, @NotNull String yGuardJar, @NotNull String buildXml, int heapSize) throws IOException
+        {
+            if (!isAlive() || heapSize != this.heapSize)
+            {
+                shutdown();
+                start(heapSize);
+            }
+            try
+            {
+                sendJob(yGuardJar, buildXml);
+            }
+            catch (IOException e)
+            {
+                // the worker died since the previous run
+                runProgress.markMessage("Restarting obfuscation worker");
+                shutdown();
+                start(heapSize);
+                sendJob(yGuardJar, buildXml);
+            }
+
+            final YGuardMilestones milestones = new YGuardMilestones(runProgress);
+            milestones.taskStarted();
+            while (true)
+            {
+                waitForMessage(runProgress);
+                final int type = in.readInt();
+                switch (type)
+                {
+                    case WorkerProtocol.LOG:
+                        final int priority = in.readInt();
+                        final String message = WorkerProtocol.readString(in);
+                        if (priority >= Project.MSG_VERBOSE)
+                        {
+                            runProgress.markVerbose(message);
+                        }
+                        else
+                        {
+                            runProgress.markMessage(message);
+                        }
+                        milestones.messageLogged(message);
+                        break;
+                    case WorkerProtocol.DONE:
+                        milestones.taskFinished();
+                        return true;
+                    case WorkerProtocol.ERROR:
+                        runProgress.markError(WorkerProtocol.readString(in));
+                        return false;
+                    default:
+                        shutdown();
+                        throw new IOException("Unexpected message from obfuscation worker: " + type);
+                }
+            }
+        }
+
+        // not synchronized, so that a worker blocked in a job can be killed
+        private void shutdown()
+        {
+            final Socket socket = this.socket;
+            if (socket != null)
+            {
+                try
+                {
+                    // the worker exits when the connection is closed
+                    socket.close();
+                }
+                catch (IOException e)
+                {
+                    LOG.debug(e);
+                }
+                this.socket = null;
+            }
+            final Process process = this.process;
+            if (process != null)
+            {
+                process.destroy();
+                this.process = null;
+            }
+        }
+
+        private void sendJob(@NotNull String yGuardJar, @NotNull String buildXml) throws IOException
+        {
+            out.writeInt(WorkerProtocol.JOB);
+            WorkerProtocol.writeString(out, yGuardJar);
+            WorkerProtocol.writeString(out, buildXml);
+            out.flush();
+        }
+
+        private void waitForMessage(@NotNull RunProgress runProgress) throws IOException
+        {
+            while (in.available() == 0)
+            {
+                if (runProgress.isCanceled())
+                {
+                    shutdown();
+                    throw new ProcessCanceledException();
+                }
+                if (!isAlive())
+                {
+                    shutdown();
+                    throw new IOException("Obfuscation worker terminated unexpectedly");
+                }
+                try
+                {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for obfuscation worker");
+                }
+            }
+        }
+
+        private boolean isAlive()
+        {
+            final Process process = this.process;
+            if (process == null || socket == null)
+            {
+                return false;
+            }
+            try
+            {
+                process.exitValue();
+                return false;
+            }
+            catch (IllegalThreadStateException e)
+            {
+                return true;
+            }
+        }
+
+        private void start(int heapSize) throws IOException
+        {
+            final List<String> command = new ArrayList<String>();
+            command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+            command.add("-Xmx" + heapSize + "m");
+            command.add("-cp");
+            command.add(getClassPath());
+            command.add(ObfuscationWorker.class.getName());
+
+            final ProcessBuilder processBuilder = new ProcessBuilder(command);
+            processBuilder.redirectErrorStream(true);
+            final Process process = processBuilder.start();
+            this.process = process;
+            this.heapSize = heapSize;
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            final String line = reader.readLine();
+            if (line == null || !line.startsWith(WorkerProtocol.PORT_PREFIX))
+            {
+                shutdown();
+                throw new IOException("Obfuscation worker failed to start" + (line != null ? ": " + line : ""));
+            }
+            final String[] portAndToken = line.substring(WorkerProtocol.PORT_PREFIX.length()).split(" ");
+
+            final Thread outputReader = new Thread("IntelliGuard worker output")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        String output;
+                        while ((output = reader.readLine()) != null)
+                        {
+                            LOG.info(output);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // worker terminated
+                    }
+                }
+            };
+            outputReader.setDaemon(true);
+            outputReader.start();
+
+            final Socket socket;
+            try
+            {
+                socket = new Socket(InetAddress.getByName(null), Integer.parseInt(portAndToken[0]));
+            }
+            catch (IOException e)
+            {
+                shutdown();
+                throw e;
+            }
+            this.socket = socket;
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            WorkerProtocol.writeString(out, portAndToken[1]);
+            out.flush();
+        }
+    }
+
+    @NotNull
+    private static String getClassPath()
+    {
+        final List<String> classPath = new ArrayList<String>();
+        final String antJar = PathUtil.getJarPathForClass(Project.class);
+        classPath.add(antJar);
+        // Project.init() needs the launcher where Ant is split into several jars
+        final File antLauncher = new File(new File(antJar).getParentFile(), "ant-launcher.jar");
+        if (antLauncher.isFile())
+        {
+            classPath.add(antLauncher.getAbsolutePath());
+        }
+        classPath.add(PathUtil.getJarPathForClass(ObfuscationWorker.class));
+
+        final StringBuilder sb = new StringBuilder();
+        for (String path : classPath)
+        {
+            if (sb.length() != 0)
+            {
+                sb.append(File.pathSeparatorChar);
+            }
+            sb.append(path);
+        }
+        return sb.toString();
+    }
+}
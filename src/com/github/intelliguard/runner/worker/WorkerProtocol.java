@@ -0,0 +1,63 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.runner.worker;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Message framing between {@link ObfuscationWorkerClient} and {@link ObfuscationWorker}. Every
+ * message starts with an int type, log priorities are Ant message levels sent as an int, strings are sent as an int length followed by UTF-8 bytes.
+ * <pre>
+ * client: token, then per job: JOB yGuardJar buildXml
+ * worker: any number of LOG priority message, then DONE or ERROR message
+ * </pre>
+ */
+class WorkerProtocol
+{
+    static final String PORT_PREFIX = "IntelliGuard worker listening on port ";
+
+    static final int JOB = 1;
+    static final int LOG = 2;
+    static final int DONE = 3;
+    static final int ERROR = 4;
+
+    private static final int MAX_STRING_LENGTH = 256 * 1024 * 1024;
+
+    static void writeString(@NotNull DataOutputStream out, @NotNull String s) throws IOException
+    {
+        final byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @NotNull
+    static String readString(@NotNull DataInputStream in) throws IOException
+    {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH)
+        {
+            throw new IOException("Invalid message length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.ui;
+
+import com.github.intelliguard.model.Keeper;
+import com.github.intelliguard.runner.CoverageReport;
+import com.github.intelliguard.runner.CoverageTask;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tool window tab showing a {@link CoverageReport}: kept and total symbols per package, and the kept
+ * symbols of the selected packages.
+ */
+public class CoveragePanel
+{
+    private static final String[] PACKAGE_COLUMNS = { "Package", "Kept classes", "Kept methods", "Kept fields", "Obfuscated" };
+    private static final String[] SYMBOL_COLUMNS = { "Type", "Class", "Member", "Reason" };
+
+    private final CoverageReport report;
+    private final JPanel panel;
+    private final JLabel summaryLabel = new JLabel();
+    private final PackageTableModel packageTableModel = new PackageTableModel();
+    private final SymbolTableModel symbolTableModel = new SymbolTableModel();
+    private final JTable packageTable = new JTable(packageTableModel);
+
+    private static class PackageTableModel extends AbstractTableModel
+    {
+        private List<CoverageReport.PackageCoverage> packages = new ArrayList<CoverageReport.PackageCoverage>();
+
+        public int getRowCount()
+        {
+            return packages.size();
+        }
+
+        public int getColumnCount()
+        {
+            return PACKAGE_COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return PACKAGE_COLUMNS[column];
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex)
+        {
+            final CoverageReport.PackageCoverage coverage = packages.get(rowIndex);
+            switch (columnIndex)
+            {
+                case 0:
+                    return coverage.getPackageName().length() == 0 ? "<default>" : coverage.getPackageName();
+                case 1:
+                    return formatKept(coverage, Keeper.Type.CLASS);
+                case 2:
+                    return formatKept(coverage, Keeper.Type.METHOD);
+                case 3:
+                    return formatKept(coverage, Keeper.Type.FIELD);
+                default:
+                    return formatObfuscated(coverage);
+            }
+        }
+    }
+
+    private static class SymbolTableModel extends AbstractTableModel
+    {
+        private List<CoverageReport.KeptSymbol> symbols = new ArrayList<CoverageReport.KeptSymbol>();
+
+        public int getRowCount()
+        {
+            return symbols.size();
+        }
+
+        public int getColumnCount()
+        {
+            return SYMBOL_COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return SYMBOL_COLUMNS[column];
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex)
+        {
+            final CoverageReport.KeptSymbol symbol = symbols.get(rowIndex);
+            switch (columnIndex)
+            {
+                case 0:
+                    return symbol.getType().getName();
+                case 1:
+                    return symbol.getClassName();
+                case 2:
+                    return symbol.getMemberName();
+                default:
+                    return symbol.getReason();
+            }
+        }
+    }
+
+    public CoveragePanel(@NotNull CoverageReport report)
+    {
+        this.report = report;
+
+        final JButton refreshButton = new JButton("Refresh");
+        refreshButton.setToolTipText("Analyze files changed since the last update");
+        refreshButton.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                new CoverageTask(CoveragePanel.this.report, false).queue();
+            }
+        });
+        final JButton rebuildButton = new JButton("Rebuild");
+        rebuildButton.setToolTipText("Analyze all files, e.g. after class hierarchy changes");
+        rebuildButton.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                new CoverageTask(CoveragePanel.this.report, true).queue();
+            }
+        });
+        final JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(refreshButton);
+        top.add(rebuildButton);
+        top.add(summaryLabel);
+
+        packageTable.getSelectionModel().addListSelectionListener(new ListSelectionListener()
+        {
+            public void valueChanged(ListSelectionEvent e)
+            {
+                if (!e.getValueIsAdjusting())
+                {
+                    updateSymbols();
+                }
+            }
+        });
+
+        final JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(packageTable), new JScrollPane(new JTable(symbolTableModel)));
+        splitPane.setResizeWeight(0.5);
+
+        panel = new JPanel(new BorderLayout());
+        panel.add(top, BorderLayout.NORTH);
+        panel.add(splitPane, BorderLayout.CENTER);
+    }
+
+    public JPanel getPanel()
+    {
+        return panel;
+    }
+
+    /**
+     * Reloads the tables from the report. Must be called on the event dispatch thread.
+     * @param status text describing the last update
+     */
+    public void refresh(@NotNull String status)
+    {
+        final List<CoverageReport.PackageCoverage> packages = report.getPackages();
+        final CoverageReport.Counts totals = CoverageReport.getTotals(packages);
+        summaryLabel.setText(MessageFormat.format("{0}. {1} of {2} symbols kept, {3} obfuscated.",
+                status, totals.getKept(), totals.getTotal(), formatObfuscated(totals)));
+        packageTableModel.packages = packages;
+        packageTableModel.fireTableDataChanged();
+        updateSymbols();
+    }
+
+    private void updateSymbols()
+    {
+        final List<CoverageReport.KeptSymbol> symbols = new ArrayList<CoverageReport.KeptSymbol>();
+        final int[] rows = packageTable.getSelectedRows();
+        if (rows.length == 0)
+        {
+            for (CoverageReport.PackageCoverage coverage : packageTableModel.packages)
+            {
+                symbols.addAll(coverage.getKeptSymbols());
+            }
+        }
+        else
+        {
+            for (int row : rows)
+            {
+                symbols.addAll(packageTableModel.packages.get(row).getKeptSymbols());
+            }
+        }
+        symbolTableModel.symbols = symbols;
+        symbolTableModel.fireTableDataChanged();
+    }
+
+    private static String formatKept(@NotNull CoverageReport.Counts counts, @NotNull Keeper.Type type)
+    {
+        return counts.getKept(type) + " / " + counts.getTotal(type);
+    }
+
+    private static String formatObfuscated(@NotNull CoverageReport.Counts counts)
+    {
+        final int total = counts.getTotal();
+        return total == 0 ? "-" : MessageFormat.format("{0,number,0.0}%", 100d * (total - counts.getKept()) / total);
+    }
+}
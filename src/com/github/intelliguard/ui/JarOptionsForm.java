@@ -50,6 +50,10 @@ public class JarOptionsForm
     private JTree jarContent;
     private JCheckBox linkLibrariesInManifestCheckBox;
     private JTextField librariesRelativePath;
+    private JCheckBox incrementalCheckBox;
+    private JCheckBox storeUncompressedCheckBox;
+    private JCheckBox reproducibleCheckBox;
+    private JCheckBox mergeArchivesCheckBox;
     private JPanel contentPane;
     private TextFieldWithBrowseButton jarPath;
     private TextFieldWithBrowseButton obfuscatedJarPath;
@@ -105,6 +109,11 @@ public class JarOptionsForm
             }
         });
 
+        incrementalCheckBox.setSelected(facetConfiguration.jarConfig.isIncremental());
+        storeUncompressedCheckBox.setSelected(facetConfiguration.jarConfig.isStoreUncompressed());
+        reproducibleCheckBox.setSelected(facetConfiguration.jarConfig.isReproducible());
+        mergeArchivesCheckBox.setSelected(facetConfiguration.jarConfig.isMergeArchives());
+
         executeMakeCheckBox.setSelected(true); // TODO: read from settings
 
         final MyTreeModel myTreeModel = new MyTreeModel(guardFacet);
@@ -178,6 +187,26 @@ public class JarOptionsForm
                 : null;
     }
 
+    public boolean getIncremental()
+    {
+        return incrementalCheckBox.isSelected();
+    }
+
+    public boolean getStoreUncompressed()
+    {
+        return storeUncompressedCheckBox.isSelected();
+    }
+
+    public boolean getReproducible()
+    {
+        return reproducibleCheckBox.isSelected();
+    }
+
+    public boolean getMergeArchives()
+    {
+        return mergeArchivesCheckBox.isSelected();
+    }
+
     public boolean getExecuteMake()
     {
         return executeMakeCheckBox.isSelected();
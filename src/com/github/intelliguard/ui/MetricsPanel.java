@@ -0,0 +1,153 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.ui;
+
+import com.github.intelliguard.runner.RunMetrics;
+import com.github.intelliguard.runner.RunMetricsHistory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tool window tab listing the metrics of recent obfuscation runs, with export to CSV and JSON.
+ */
+public class MetricsPanel
+{
+    private final Project project;
+    private final RunMetricsHistory history;
+    private final JPanel panel;
+    private final MetricsTableModel tableModel = new MetricsTableModel();
+
+    private static class MetricsTableModel extends AbstractTableModel
+    {
+        private List<RunMetrics> runs = new ArrayList<RunMetrics>();
+
+        public int getRowCount()
+        {
+            return runs.size();
+        }
+
+        public int getColumnCount()
+        {
+            return RunMetricsHistory.COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column)
+        {
+            return RunMetricsHistory.COLUMNS[column];
+        }
+
+        public Object getValueAt(int rowIndex, int columnIndex)
+        {
+            return RunMetricsHistory.getValue(runs.get(rowIndex), columnIndex);
+        }
+    }
+
+    public MetricsPanel(@NotNull Project project, @NotNull RunMetricsHistory history)
+    {
+        this.project = project;
+        this.history = history;
+
+        final JButton csvButton = new JButton("Export CSV...");
+        csvButton.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                export("csv", MetricsPanel.this.history.toCsv());
+            }
+        });
+        final JButton jsonButton = new JButton("Export JSON...");
+        jsonButton.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                export("json", MetricsPanel.this.history.toJson());
+            }
+        });
+        final JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(csvButton);
+        buttons.add(jsonButton);
+
+        panel = new JPanel(new BorderLayout());
+        panel.add(buttons, BorderLayout.NORTH);
+        panel.add(new JScrollPane(new JTable(tableModel)), BorderLayout.CENTER);
+    }
+
+    public JPanel getPanel()
+    {
+        return panel;
+    }
+
+    /**
+     * Reloads the table from the history. May be called from any thread.
+     */
+    public void refresh()
+    {
+        final List<RunMetrics> runs = history.getRuns();
+        SwingUtilities.invokeLater(new Runnable()
+        {
+            public void run()
+            {
+                tableModel.runs = runs;
+                tableModel.fireTableDataChanged();
+            }
+        });
+    }
+
+    private void export(@NotNull String extension, @NotNull String content)
+    {
+        final VirtualFile baseDir = project.getBaseDir();
+        final JFileChooser jFileChooser = FileChooserFactory.createPreferredDirectoryFileChooser("Export obfuscation metrics",
+                baseDir == null ? "." : baseDir.getPath());
+        jFileChooser.setSelectedFile(new File(jFileChooser.getCurrentDirectory(), "obfuscation-metrics." + extension));
+        if (jFileChooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION)
+        {
+            return;
+        }
+        final File file = jFileChooser.getSelectedFile();
+        try
+        {
+            final OutputStream os = new FileOutputStream(file);
+            try
+            {
+                os.write(content.getBytes("UTF-8"));
+            }
+            finally
+            {
+                os.close();
+            }
+        }
+        catch (IOException e)
+        {
+            Messages.showErrorDialog(project, "Could not write " + file.getPath() + ": " + e.getMessage(), "Export error");
+        }
+    }
+}
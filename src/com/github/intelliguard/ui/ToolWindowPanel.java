@@ -19,6 +19,13 @@ package com.github.intelliguard.ui;
 import com.github.intelliguard.runner.ProgressInfoReceiver;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -29,11 +36,54 @@ import javax.swing.*;
 public class ToolWindowPanel implements ProgressInfoReceiver
 {
     private static final String NL = System.getProperty("line.separator", "\n");
+    private static final int CAPACITY = 10000;
+    private static final int FLUSH_DELAY = 250;
+
     private JPanel panel;
     private JTextArea textArea;
+    private JCheckBox showVerboseCheckBox;
+
+    // messages are buffered here by the logging threads and written to the text area by the timer
+    private final Object lock = new Object();
+    private final ArrayDeque<Message> messages = new ArrayDeque<Message>();
+    private final List<Message> pending = new ArrayList<Message>();
+    private int verboseCount;
+    private boolean rebuild;
+    private final Timer flushTimer;
+
+    private static class Message
+    {
+        private final Level level;
+        private final String text;
+
+        private Message(Level level, String text)
+        {
+            this.level = level;
+            this.text = text;
+        }
+    }
 
     public ToolWindowPanel()
     {
+        showVerboseCheckBox.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                synchronized (lock)
+                {
+                    rebuild = true;
+                }
+                flush();
+            }
+        });
+        flushTimer = new Timer(FLUSH_DELAY, new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                flush();
+            }
+        });
+        flushTimer.start();
         clear();
     }
 
@@ -44,11 +94,109 @@ public class ToolWindowPanel implements ProgressInfoReceiver
 
     public void info(String info)
     {
-        textArea.append(info + NL);
+        log(Level.INFO, info);
+    }
+
+    /**
+     * Buffers a message. May be called from any thread; the message shows up with the next flush.
+     */
+    public void log(Level level, String text)
+    {
+        final Message message = new Message(level, text);
+        synchronized (lock)
+        {
+            messages.addLast(message);
+            if (level == Level.VERBOSE)
+            {
+                verboseCount++;
+            }
+            while (messages.size() > CAPACITY)
+            {
+                if (messages.removeFirst().level == Level.VERBOSE)
+                {
+                    verboseCount--;
+                }
+            }
+            if (!rebuild)
+            {
+                pending.add(message);
+                if (pending.size() > CAPACITY)
+                {
+                    pending.clear();
+                    rebuild = true;
+                }
+            }
+        }
     }
 
     public void clear()
     {
-        textArea.setText("");
+        synchronized (lock)
+        {
+            messages.clear();
+            pending.clear();
+            verboseCount = 0;
+            rebuild = true;
+        }
+        flush();
+    }
+
+    public void dispose()
+    {
+        flushTimer.stop();
+    }
+
+    private void flush()
+    {
+        final boolean showVerbose = showVerboseCheckBox.isSelected();
+        final StringBuilder sb = new StringBuilder();
+        final boolean replace;
+        final int hidden;
+        synchronized (lock)
+        {
+            if (!rebuild && pending.isEmpty())
+            {
+                return;
+            }
+            final Collection<Message> source = rebuild ? messages : pending;
+            for (Message message : source)
+            {
+                if (showVerbose || message.level != Level.VERBOSE)
+                {
+                    sb.append(message.text).append(NL);
+                }
+            }
+            replace = rebuild;
+            rebuild = false;
+            pending.clear();
+            hidden = showVerbose ? 0 : verboseCount;
+        }
+
+        if (replace)
+        {
+            textArea.setText(sb.toString());
+        }
+        else
+        {
+            textArea.append(sb.toString());
+        }
+        trim();
+        showVerboseCheckBox.setText(hidden == 0 ? "Show verbose messages" : "Show verbose messages (" + hidden + " hidden)");
+    }
+
+    private void trim()
+    {
+        final int excess = textArea.getLineCount() - CAPACITY;
+        if (excess > 0)
+        {
+            try
+            {
+                textArea.replaceRange("", 0, textArea.getLineEndOffset(excess - 1));
+            }
+            catch (BadLocationException e)
+            {
+                textArea.setText("");
+            }
+        }
     }
 }
@@ -31,6 +31,8 @@ import com.intellij.psi.PsiClass;
 import com.intellij.ui.DocumentAdapter;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -60,6 +62,11 @@ public class YFacetConfigurationForm
     private TextFieldWithBrowseButton mainClass;
     private JButton downloadYGuardButton;
     private TextFieldWithBrowseButton yJarPath;
+    private JSpinner cacheSizeSpinner;
+    private JCheckBox outOfProcessCheckBox;
+    private JSpinner workerHeapSizeSpinner;
+    private JTextField keepAnnotationsField;
+    private JTextField reflectionBaseTypesField;
     private static final String YGUARD_DOWNLOAD_URL = "http://www.yworks.com/en/products_yguard_about.html";
 
     public YFacetConfigurationForm(@NotNull final FacetEditorContext editorContext, @NotNull final FacetValidatorsManager validatorsManager, @NotNull final GuardFacetConfiguration state)
@@ -75,8 +82,14 @@ public class YFacetConfigurationForm
         conserveManifestCheckBox.setSelected(state.conservemanifest);
         replaceClassNameStringsCheckBox.setSelected(state.replaceClassNameStrings);
         pedanticErrorCheckingCheckBox.setSelected(state.errorChecking);
+        keepAnnotationsField.setText(state.keepAnnotations != null ? state.keepAnnotations : "");
+        reflectionBaseTypesField.setText(state.reflectionBaseTypes != null ? state.reflectionBaseTypes : "");
         mainClass.getTextField().setText(state.mainclass != null ? state.mainclass : "");
         yJarPath.getTextField().setText(state.yGuardJar != null ? state.yGuardJar : "");
+        cacheSizeSpinner.setModel(new SpinnerNumberModel(Math.max(0, state.cacheSize), 0, 100 * 1024, 64));
+        outOfProcessCheckBox.setSelected(state.outOfProcess);
+        workerHeapSizeSpinner.setModel(new SpinnerNumberModel(Math.max(64, state.workerHeapSize), 64, 64 * 1024, 128));
+        workerHeapSizeSpinner.setEnabled(state.outOfProcess);
 
         sourceFileCheckBox.addActionListener(new ActionListener()
         {
@@ -155,6 +168,22 @@ public class YFacetConfigurationForm
                 state.errorChecking = pedanticErrorCheckingCheckBox.isSelected();
             }
         });
+        keepAnnotationsField.getDocument().addDocumentListener(new DocumentAdapter()
+        {
+            @Override
+            protected void textChanged(DocumentEvent e)
+            {
+                state.keepAnnotations = keepAnnotationsField.getText().trim();
+            }
+        });
+        reflectionBaseTypesField.getDocument().addDocumentListener(new DocumentAdapter()
+        {
+            @Override
+            protected void textChanged(DocumentEvent e)
+            {
+                state.reflectionBaseTypes = reflectionBaseTypesField.getText().trim();
+            }
+        });
 
         mainClass.addActionListener(new ActionListener()
         {
@@ -201,6 +230,30 @@ public class YFacetConfigurationForm
             }
         });
 
+        cacheSizeSpinner.addChangeListener(new ChangeListener()
+        {
+            public void stateChanged(ChangeEvent e)
+            {
+                state.cacheSize = ((Number) cacheSizeSpinner.getValue()).intValue();
+            }
+        });
+
+        outOfProcessCheckBox.addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent e)
+            {
+                state.outOfProcess = outOfProcessCheckBox.isSelected();
+                workerHeapSizeSpinner.setEnabled(state.outOfProcess);
+            }
+        });
+        workerHeapSizeSpinner.addChangeListener(new ChangeListener()
+        {
+            public void stateChanged(ChangeEvent e)
+            {
+                state.workerHeapSize = ((Number) workerHeapSizeSpinner.getValue()).intValue();
+            }
+        });
+
         downloadYGuardButton.addActionListener(new ActionListener()
         {
             public void actionPerformed(ActionEvent e)
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2009 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.intelliguard.util;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The erased signature of a method as used in method keepers, e.g.
+ * <tt>java.util.List foo(java.lang.String, int[])</tt>. Signatures are cached on the method, so
+ * comparing the signature of an unchanged method with a keeper allocates nothing.
+ */
+public final class MethodSignature
+{
+    private static final Key<CachedValue<MethodSignature>> SIGNATURE_KEY = Key.create("IntelliGuard.MethodSignature");
+
+    private final String returnType;
+    private final String name;
+    private final String[] parameterTypes;
+    private final String text;
+
+    private MethodSignature(@Nullable String returnType, @NotNull String name, @NotNull String[] parameterTypes)
+    {
+        this.returnType = returnType;
+        this.name = name;
+        this.parameterTypes = parameterTypes;
+
+        final StringBuilder sb = new StringBuilder();
+        if (returnType != null)
+        {
+            sb.append(returnType).append(' ');
+        }
+        sb.append(name).append('(');
+        for (int i = 0; i < parameterTypes.length; i++)
+        {
+            if (i != 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(parameterTypes[i]);
+        }
+        sb.append(')');
+        this.text = sb.toString();
+    }
+
+    /**
+     * @param method a method
+     * @return the signature of the method, cached until the PSI changes
+     */
+    @NotNull
+    public static MethodSignature of(@NotNull final PsiMethod method)
+    {
+        CachedValue<MethodSignature> cachedValue = method.getUserData(SIGNATURE_KEY);
+        if (cachedValue == null)
+        {
+            cachedValue = CachedValuesManager.getManager(method.getProject()).createCachedValue(new CachedValueProvider<MethodSignature>()
+            {
+                public Result<MethodSignature> compute()
+                {
+                    return Result.create(create(method), PsiModificationTracker.MODIFICATION_COUNT);
+                }
+            }, false);
+            method.putUserData(SIGNATURE_KEY, cachedValue);
+        }
+        return cachedValue.getValue();
+    }
+
+    @NotNull
+    private static MethodSignature create(@NotNull PsiMethod method)
+    {
+        final PsiType type = method.getReturnType();
+        final String returnType = type != null ? erase(type.getCanonicalText()) : null;
+        final PsiParameter[] parameters = method.getParameterList().getParameters();
+        final String[] parameterTypes = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++)
+        {
+            parameterTypes[i] = erase(parameters[i].getType().getCanonicalText());
+        }
+        return new MethodSignature(returnType, method.getName(), parameterTypes);
+    }
+
+    /**
+     * Removes type arguments in a single pass, e.g. <tt>java.util.Map&lt;K, java.util.List&lt;V&gt;&gt;[]</tt>
+     * becomes <tt>java.util.Map[]</tt>. Text with unbalanced brackets is returned as it is.
+     * @param typeText the canonical text of a type
+     * @return the erased type text
+     */
+    @NotNull
+    public static String erase(@NotNull String typeText)
+    {
+        final int start = typeText.indexOf('<');
+        if (start == -1)
+        {
+            return typeText;
+        }
+        final StringBuilder sb = new StringBuilder(typeText.length());
+        sb.append(typeText, 0, start);
+        int depth = 0;
+        for (int i = start; i < typeText.length(); i++)
+        {
+            final char c = typeText.charAt(i);
+            if (c == '<')
+            {
+                depth++;
+            }
+            else if (c == '>')
+            {
+                if (depth == 0)
+                {
+                    return typeText;
+                }
+                depth--;
+            }
+            else if (depth == 0)
+            {
+                sb.append(c);
+            }
+        }
+        return depth == 0 ? sb.toString() : typeText;
+    }
+
+    @Nullable
+    public String getReturnType()
+    {
+        return returnType;
+    }
+
+    @NotNull
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getParameterCount()
+    {
+        return parameterTypes.length;
+    }
+
+    @NotNull
+    public String getParameterType(int index)
+    {
+        return parameterTypes[index];
+    }
+
+    /**
+     * @return the signature as written in method keepers
+     */
+    @NotNull
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * @param keeperName the name of a method keeper
+     * @return <tt>true</tt> if the keeper names this signature
+     */
+    public boolean matches(@Nullable String keeperName)
+    {
+        return text.equals(keeperName);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final MethodSignature that = (MethodSignature) o;
+        return text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return text.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return text;
+    }
+}
@@ -16,13 +16,21 @@
 
 package com.github.intelliguard.util;
 
+import com.github.intelliguard.ant.YGuardTaskCache;
+import com.github.intelliguard.jar.JarIndex;
 import com.intellij.facet.ui.ValidationResult;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
@@ -31,7 +39,34 @@ import org.jetbrains.annotations.NotNull;
  */
 public class ObfuscatorUtils
 {
+    private static final String SHM_DIR = "/dev/shm";
+
+    // time stamp and length of the files which passed checkYGuard, keyed by path; failed checks are
+    // not cached so that a jar fixed in place is accepted at once
+    private static final Map<String, Pair<Long, Long>> validYGuardJars = new ConcurrentHashMap<String, Pair<Long, Long>>();
+
     public static ValidationResult checkYGuard(@NotNull final String jarPath)
+    {
+        final File file = new File(jarPath);
+        final Pair<Long, Long> stamp = Pair.create(file.lastModified(), file.length());
+        if (stamp.equals(validYGuardJars.get(jarPath)))
+        {
+            return ValidationResult.OK;
+        }
+
+        final ValidationResult result = doCheckYGuard(jarPath);
+        if (result.isOk() && file.isFile())
+        {
+            validYGuardJars.put(jarPath, stamp);
+        }
+        else
+        {
+            validYGuardJars.remove(jarPath);
+        }
+        return result;
+    }
+
+    private static ValidationResult doCheckYGuard(@NotNull final String jarPath)
     {
         final VirtualFile jarFile = findJarFile(jarPath);
         if (jarFile == null)
@@ -39,7 +74,7 @@ public class ObfuscatorUtils
           return new ValidationResult("File " + jarPath + " does not exist");
         }
 
-        String yGuardClassName = "com.yworks.yguard.YGuardTask";
+        String yGuardClassName = YGuardTaskCache.YGUARD_TASK_CLASS;
         final VirtualFile yGuardClassFile = jarFile.findFileByRelativePath(yGuardClassName.replace('.', '/') + ".class");
         if (yGuardClassFile == null)
         {
@@ -48,6 +83,34 @@ public class ObfuscatorUtils
         return ValidationResult.OK;
     }
 
+    /**
+     * Creates a scratch file for an intermediate jar which is only needed during obfuscation. A memory
+     * backed file system is used when available.
+     * @param name a name to include in the file name, e.g. the module name
+     * @return a new empty file, deleted on exit unless deleted earlier
+     * @throws IOException if the file could not be created
+     */
+    @NotNull
+    public static File createScratchJar(@NotNull final String name) throws IOException
+    {
+        final File shm = new File(SHM_DIR);
+        final File dir = shm.isDirectory() && shm.canWrite() ? shm : null;
+        final File file = File.createTempFile("intelliguard-" + name.replaceAll("[^A-Za-z0-9._-]", "_") + "-", ".jar", dir);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Deletes a scratch jar created by {@link #createScratchJar(String)} together with the entry index
+     * written next to it by incremental builds.
+     * @param file the scratch jar
+     */
+    public static void deleteScratchJar(@NotNull final File file)
+    {
+        file.delete();
+        JarIndex.getIndexFile(file).delete();
+    }
+
     @Nullable
     private static VirtualFile findJarFile(@NotNull final String jarPath)
     {
@@ -33,47 +33,7 @@ public class PsiUtils
     @NotNull
     public static String getSignatureString(@NotNull PsiMethod method)
     {
-        StringBuilder sb = new StringBuilder();
-
-        PsiType returnType = method.getReturnType();
-        if (returnType != null)
-        {
-            final String text = returnType.getCanonicalText();
-            sb.append(simplify(text)).append(" ");
-        }
-
-        sb.append(method.getName());
-        sb.append("(");
-
-        String prepend = "";
-        for (PsiParameter psiParameter : method.getParameterList().getParameters())
-        {
-            sb.append(prepend);
-            prepend = ", ";
-            final String text = psiParameter.getType().getCanonicalText();
-            sb.append(simplify(text));
-        }
-
-        sb.append(")");
-
-        return sb.toString();
-    }
-
-    private static String simplify(@NotNull String text)
-    {
-        while (text.contains(">"))
-        {
-            int eix = text.indexOf('>');
-            String before = text.substring(0, eix);
-            int six = before.lastIndexOf('<');
-            if (six == -1)
-            {
-                // unmatched pair - abort...
-                return text;
-            }
-            text = text.substring(0, six) + text.substring(eix + 1);
-        }
-        return text;
+        return MethodSignature.of(method).getText();
     }
 
     @Nullable
@@ -132,19 +92,30 @@ public class PsiUtils
         return null;
     }
 
+    /**
+     * @param psiClass a class
+     * @return the package of the class, an empty string for the default package, or <tt>null</tt> if unknown
+     */
+    @Nullable
+    public static String getPackageName(@NotNull PsiClass psiClass)
+    {
+        final PsiFile psiFile = psiClass.getContainingFile();
+        return psiFile instanceof PsiJavaFile ? ((PsiJavaFile) psiFile).getPackageName() : null;
+    }
+
     public static boolean isPublicStaticVoidMain(@NotNull PsiMethod method)
     {
         final PsiModifierList modifierList = method.getModifierList();
         return modifierList.hasModifierProperty("public")
                 && modifierList.hasModifierProperty("static")
-                && VOID_MAIN_JAVA_LANG_STRING.equals(getSignatureString(method));
+                && MethodSignature.of(method).matches(VOID_MAIN_JAVA_LANG_STRING);
     }
 
     public static void main(String[] args)
     {
         String in = "java.util.Collection<java.lang.String> foobar(java.util.List<java.util.List<java.lang.String>>)";
         System.out.println("in = " + in);
-        String out = simplify(in);
+        String out = MethodSignature.erase(in);
         System.out.println("out = " + out);
     }
 }
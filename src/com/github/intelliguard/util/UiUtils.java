@@ -24,6 +24,8 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.github.intelliguard.GuardProjectComponent;
 
+import javax.swing.event.HyperlinkListener;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
@@ -55,4 +57,16 @@ public class UiUtils
         };
         ApplicationManager.getApplication().invokeLater(r);
     }
+
+    public static void showErrorBallon(final Project project, final String htmlText, final HyperlinkListener listener)
+    {
+        Runnable r = new Runnable()
+        {
+            public void run()
+            {
+                ToolWindowManager.getInstance(project).notifyByBalloon(GuardProjectComponent.TOOLWINDOW_ID, MessageType.ERROR, htmlText, null, listener);
+            }
+        };
+        ApplicationManager.getApplication().invokeLater(r);
+    }
 }